@@ -0,0 +1,81 @@
+package nz.ac.auckland.apiproxy.chat.openai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import nz.ac.auckland.apiproxy.chat.openai.ChatCompletionRequest.Model;
+import nz.ac.auckland.apiproxy.config.ApiProxyConfig;
+import org.apache.http.HttpEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Serializing a chat request for the proxy, and keying it in the response cache. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatRequestBenchmark {
+
+  // Roughly the length of a chat turn in the game
+  private static final String TURN =
+      "MediSort-5 ranked Patient A first because the wearable data showed a rising fever and the"
+          + " outbreak model predicted a facility-wide spread within two days.";
+
+  @Param({"8", "64", "256"})
+  public int historySize;
+
+  private ChatCompletionRequest request;
+  private List<ChatMessage> messages;
+
+  @Setup
+  public void setUp() throws IOException {
+    // Built through Jackson because the config is normally only read from apiproxy.config
+    ApiProxyConfig config =
+        new ObjectMapper(new YAMLFactory())
+            .readValue("email: \"bench@example.com\"\napiKey: \"bench\"", ApiProxyConfig.class);
+    request =
+        new ChatCompletionRequest(config)
+            .setN(1)
+            .setTemperature(0.2)
+            .setTopP(0.5)
+            .setModel(Model.GPT_4_1_NANO)
+            .setMaxTokens(150);
+    messages = new ArrayList<>();
+    messages.add(new ChatMessage("system", TURN.repeat(20)));
+    for (int i = 0; i < historySize; i++) {
+      messages.add(new ChatMessage(i % 2 == 0 ? "user" : "assistant", i + ": " + TURN));
+    }
+    for (ChatMessage message : messages) {
+      request.addMessage(message);
+    }
+  }
+
+  @Benchmark
+  public long buildRequestBody() throws IOException {
+    // Written out so the whole body is produced, however the entity builds it
+    HttpEntity entity = request.createEntity(true);
+    entity.writeTo(OutputStream.nullOutputStream());
+    return entity.getContentLength();
+  }
+
+  @Benchmark
+  public String cacheKey() {
+    return ChatCompletionCache.keyOf(
+        Model.GPT_4_1_NANO.getModelName(), messages, 0.2, 0.5, 150, 1);
+  }
+}
@@ -0,0 +1,111 @@
+package nz.ac.auckland.apiproxy.chat.openai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+import nz.ac.auckland.apiproxy.service.ProxyJson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Turning a proxy response into a {@link ChatCompletionResult}: Jackson parsing of the envelope,
+ * building the result from the completion inside it, and parsing a streamed reply.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatResponseBenchmark {
+
+  private static final Pattern WORD = Pattern.compile("\\S+\\s*");
+
+  @Param({"200", "2000"})
+  public int replyChars;
+
+  private static final ObjectReader READER =
+      ProxyJson.readerFor(ResponseChatCompletionViaProxy.class);
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private byte[] envelope;
+  private byte[] stream;
+  private ResponseChatCompletionViaProxy parsedEnvelope;
+
+  @Setup
+  public void setUp() throws IOException {
+    StringBuilder reply = new StringBuilder();
+    while (reply.length() < replyChars) {
+      reply.append("The scan showed a 73% chance of an outbreak within 48 hours. ");
+    }
+    String content = reply.substring(0, replyChars);
+
+    ObjectNode completion = mapper.createObjectNode();
+    completion.put("model", "gpt-4.1-nano");
+    completion.put("created", 1_700_000_000L);
+    completion
+        .putObject("usage")
+        .put("prompt_tokens", 900)
+        .put("completion_tokens", replyChars / 4)
+        .put("total_tokens", 900 + replyChars / 4);
+    ObjectNode choice = completion.putArray("choices").addObject();
+    choice.put("index", 0);
+    choice.putObject("message").put("role", "assistant").put("content", content);
+    choice.put("finish_reason", "stop");
+    ObjectNode root = mapper.createObjectNode();
+    root.put("success", true).put("code", 0).put("message", "OK");
+    root.set("chat_completion", completion);
+    envelope = mapper.writeValueAsBytes(root);
+    parsedEnvelope = mapper.readValue(envelope, ResponseChatCompletionViaProxy.class);
+
+    // One event per word, like the proxy's stream
+    StringBuilder events = new StringBuilder();
+    Matcher words = WORD.matcher(content);
+    while (words.find()) {
+      ObjectNode chunk = mapper.createObjectNode();
+      chunk.put("model", "gpt-4.1-nano");
+      chunk.putArray("choices").addObject().put("index", 0).putObject("delta")
+          .put("content", words.group());
+      events.append("data: ").append(mapper.writeValueAsString(chunk)).append("\n\n");
+    }
+    events.append("data: [DONE]\n\n");
+    stream = events.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public ResponseChatCompletionViaProxy parseEnvelope() throws IOException {
+    return READER.readValue(envelope);
+  }
+
+  @Benchmark
+  public ResponseChatCompletionViaProxy parseEnvelopeWithNewMapper() throws IOException {
+    // What each request pays when it creates its own ObjectMapper
+    return new ObjectMapper().readValue(envelope, ResponseChatCompletionViaProxy.class);
+  }
+
+  @Benchmark
+  public ChatCompletionResult parseResult() {
+    return new ChatCompletionResult(parsedEnvelope.chat_completion);
+  }
+
+  @Benchmark
+  public ChatCompletionResult parseStream() throws IOException, ApiProxyException {
+    return new ChatStreamParser(delta -> {}).parse(new ByteArrayInputStream(stream));
+  }
+}
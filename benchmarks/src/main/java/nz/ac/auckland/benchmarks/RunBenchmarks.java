@@ -0,0 +1,41 @@
+package nz.ac.auckland.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, but records the results as JSON in {@code
+ * target/jmh-result.json} unless another result file is given with {@code -rff}. Comparing that
+ * file between two commits, e.g. with the JMH visualizer, shows regressions in the per-message
+ * paths.
+ */
+public class RunBenchmarks {
+
+  private static final String DEFAULT_RESULT = "target/jmh-result.json";
+
+  /**
+   * Runs the benchmarks.
+   *
+   * @param args JMH command line options, e.g. a benchmark pattern or {@code -p historySize=64}
+   * @throws Exception if the options are invalid or a benchmark fails
+   */
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    if (commandLine.shouldHelp() || commandLine.shouldList()) {
+      // Plain JMH handles listing and help
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+    if (!commandLine.getResult().hasValue()) {
+      options.result(DEFAULT_RESULT);
+    }
+    if (!commandLine.getResultFormat().hasValue()) {
+      options.resultFormat(ResultFormatType.JSON);
+    }
+    new Runner(options.build()).run();
+  }
+}
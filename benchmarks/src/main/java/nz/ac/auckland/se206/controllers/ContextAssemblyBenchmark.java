@@ -0,0 +1,64 @@
+package nz.ac.auckland.se206.controllers;
+
+import java.util.concurrent.TimeUnit;
+import nz.ac.auckland.apiproxy.chat.openai.ChatMessage;
+import nz.ac.auckland.se206.conversation.ContextWindowBuilder;
+import nz.ac.auckland.se206.conversation.ConversationStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How {@link ChatController} picks the history of a request: walking the participant's and the
+ * shared history and fitting the best of it into the model's token budget.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextAssemblyBenchmark {
+
+  private static final String[] PARTICIPANTS = {"aiWitness", "humanWitness", "aiDefendent"};
+
+  @Param({"8", "64", "256"})
+  public int historySize;
+
+  private ChatController controller;
+  private String systemPrompt;
+  private ChatMessage message;
+
+  @Setup
+  public void setUp() {
+    ConversationStore store = ConversationStore.getInstance();
+    store.clear();
+    for (int i = 0; i < historySize; i++) {
+      String participant = PARTICIPANTS[(i / 2) % PARTICIPANTS.length];
+      boolean user = i % 2 == 0;
+      store.append(
+          participant,
+          user ? "user" : "assistant",
+          user ? "User" : participant,
+          "Turn " + i + ": what did the scan say about the outbreak risk of Patient A?");
+    }
+    // Only the participant is needed, no view is loaded
+    controller = new ChatController();
+    controller.setParticipant("aiWitness");
+    systemPrompt = "You are PathoScan-7. ".repeat(60);
+    message = new ChatMessage("user", "Why was Patient A seen before Patient B?");
+  }
+
+  @Benchmark
+  public ContextWindowBuilder.Window buildContextWindow() {
+    return controller.buildContextWindow(systemPrompt, null, null, message);
+  }
+}
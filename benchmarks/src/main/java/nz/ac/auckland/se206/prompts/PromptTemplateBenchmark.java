@@ -0,0 +1,46 @@
+package nz.ac.auckland.se206.prompts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filling the chat prompt template. The template is read once up front, since {@code getPrompt}
+ * resolves it as a file and so can't load it from the benchmarks jar.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptTemplateBenchmark {
+
+  private final Map<String, String> data = Map.of("participant", "PathoScan-7");
+  private String template;
+
+  @Setup
+  public void setUp() throws IOException {
+    try (InputStream stream =
+        PromptTemplateBenchmark.class.getResourceAsStream("/prompts/chat.txt")) {
+      template = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  @Benchmark
+  public String fillTemplate() {
+    return PromptEngineering.fillTemplate(template, data);
+  }
+}
@@ -0,0 +1,337 @@
+package nz.ac.auckland.apiproxy.chat.openai;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process cache of chat completion results, keyed by a hash of everything that determines the
+ * response: model, messages, temperature, top_p, max_tokens and n. A request whose parameters match
+ * an earlier one is answered from memory instead of calling the API again.
+ *
+ * <p>The cache holds at most {@code apiproxy.cache.maxEntries} results (default 256) totalling at
+ * most {@code apiproxy.cache.maxChars} characters of content (default 1,000,000), evicting the
+ * least recently used first, and forgets results older than {@code apiproxy.cache.ttlSeconds}
+ * (default 600). It can be turned off with {@code -Dapiproxy.cache.enabled=false}.
+ *
+ * <p>Results are also written through to a {@link PersistentCompletionStore} in {@code
+ * apiproxy.cache.dir} (default {@code ~/.trial-ai/chat-cache}), so they survive restarts. That
+ * store keeps results for {@code apiproxy.cache.diskTtlHours} (default 168), is compacted once it
+ * outgrows {@code apiproxy.cache.diskMaxBytes} (default 16 MB) and can be turned off with {@code
+ * -Dapiproxy.cache.persistent=false}. Only the in-memory map is read and written under the cache's
+ * lock: disk reads happen after it is released, and disk writes are queued on a writer thread.
+ */
+public class ChatCompletionCache {
+
+  private static ChatCompletionCache instance;
+  private static ExecutorService writer;
+
+  public static synchronized ChatCompletionCache getInstance() {
+    if (instance == null) {
+      // One thread, so writes of the same key reach the disk in the order they were made
+      writer =
+          Executors.newSingleThreadExecutor(
+              Thread.ofVirtual().name("completion-cache-writer").factory());
+      instance =
+          new ChatCompletionCache(
+              Integer.getInteger("apiproxy.cache.maxEntries", 256),
+              Long.getLong("apiproxy.cache.maxChars", 1_000_000),
+              Long.getLong("apiproxy.cache.ttlSeconds", 600) * 1000,
+              System::currentTimeMillis,
+              openStore(writer),
+              writer);
+    }
+    return instance;
+  }
+
+  /** Logs the cache's counters, finishes the queued disk writes and closes the on-disk store. */
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      System.out.println("Response cache: " + instance.describe());
+    }
+    if (writer != null) {
+      writer.shutdown();
+      try {
+        if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+          System.err.println("Gave up waiting for completion cache writes");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      writer = null;
+    }
+    if (instance != null && instance.store != null) {
+      try {
+        instance.store.close();
+      } catch (IOException e) {
+        System.err.println("Could not close completion cache: " + e.getMessage());
+      }
+    }
+    instance = null;
+  }
+
+  private static PersistentCompletionStore openStore(Executor compactor) {
+    if (!Boolean.parseBoolean(System.getProperty("apiproxy.cache.persistent", "true"))) {
+      return null;
+    }
+    String defaultDir =
+        Paths.get(System.getProperty("user.home"), ".trial-ai", "chat-cache").toString();
+    Path dir = Paths.get(System.getProperty("apiproxy.cache.dir", defaultDir));
+    try {
+      return new PersistentCompletionStore(
+          dir,
+          Long.getLong("apiproxy.cache.diskMaxBytes", 16L * 1024 * 1024),
+          Long.getLong("apiproxy.cache.diskTtlHours", 168) * 60 * 60 * 1000,
+          System::currentTimeMillis,
+          compactor);
+    } catch (IOException e) {
+      System.err.println("Persistent completion cache disabled, cannot use " + dir + ": " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Checks whether requests should use the cache at all.
+   *
+   * @return false if the cache was disabled with {@code -Dapiproxy.cache.enabled=false}
+   */
+  public static boolean isEnabled() {
+    return Boolean.parseBoolean(System.getProperty("apiproxy.cache.enabled", "true"));
+  }
+
+  /**
+   * Computes the cache key of a request. Unset optional parameters are passed as -1.
+   *
+   * @param model the model name, or null if not set
+   * @param messages the messages in order
+   * @param temperature the temperature
+   * @param topP the top_p value
+   * @param maxTokens the max_tokens value
+   * @param n the number of choices
+   * @return a hex encoded SHA-256 hash of the parameters
+   */
+  public static String keyOf(
+      String model,
+      List<ChatMessage> messages,
+      double temperature,
+      double topP,
+      int maxTokens,
+      int n) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      update(digest, model == null ? "" : model);
+      update(digest, temperature + "|" + topP + "|" + maxTokens + "|" + n);
+      for (ChatMessage message : messages) {
+        update(digest, message.getRole());
+        update(digest, message.getContent());
+      }
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  // Length-prefixes each value so that ("ab", "c") and ("a", "bc") hash differently
+  private static void update(MessageDigest digest, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    digest.update((bytes.length + ":").getBytes(StandardCharsets.UTF_8));
+    digest.update(bytes);
+  }
+
+  private final int maxEntries;
+  private final long maxChars;
+  private final long ttlMillis;
+  private final LongSupplier clock;
+  private final PersistentCompletionStore store;
+  private final Executor storeWriter;
+  // Least to most recently used
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalChars;
+  private long hits;
+  private long diskHits;
+  private long misses;
+  private long evictions;
+
+  ChatCompletionCache(
+      int maxEntries,
+      long maxChars,
+      long ttlMillis,
+      LongSupplier clock,
+      PersistentCompletionStore store) {
+    this(maxEntries, maxChars, ttlMillis, clock, store, Runnable::run);
+  }
+
+  ChatCompletionCache(
+      int maxEntries,
+      long maxChars,
+      long ttlMillis,
+      LongSupplier clock,
+      PersistentCompletionStore store,
+      Executor storeWriter) {
+    this.maxEntries = maxEntries;
+    this.maxChars = maxChars;
+    this.ttlMillis = ttlMillis;
+    this.clock = clock;
+    this.store = store;
+    this.storeWriter = storeWriter;
+  }
+
+  /**
+   * Looks up a result in memory, then on disk.
+   *
+   * @param key the request's key from {@link #keyOf}
+   * @return the cached result, or null if there is none or it has expired
+   */
+  public ChatCompletionResult get(String key) {
+    synchronized (this) {
+      Entry entry = getInMemory(key);
+      if (entry != null) {
+        hits++;
+        return entry.result;
+      }
+    }
+
+    // Read outside the lock so a slow disk doesn't hold up callers that hit in memory
+    ChatCompletionResult stored = store == null ? null : store.get(key);
+    synchronized (this) {
+      if (stored == null) {
+        misses++;
+        return null;
+      }
+      diskHits++;
+      // Another caller may have stored a newer result while the disk was being read
+      Entry entry = getInMemory(key);
+      if (entry != null) {
+        return entry.result;
+      }
+      putInMemory(key, stored);
+      return stored;
+    }
+  }
+
+  /**
+   * Stores a result, evicting the least recently used results if the cache is over its limits. The
+   * write to disk is queued and happens after this returns.
+   *
+   * @param key the request's key from {@link #keyOf}
+   * @param result the result to store
+   */
+  public void put(String key, ChatCompletionResult result) {
+    synchronized (this) {
+      putInMemory(key, result);
+    }
+    if (store != null) {
+      storeWriter.execute(() -> store.put(key, result));
+    }
+  }
+
+  // Gets an unexpired result from memory, dropping it if it has expired
+  private Entry getInMemory(String key) {
+    Entry entry = entries.get(key);
+    if (entry != null && clock.getAsLong() - entry.storedMillis > ttlMillis) {
+      remove(key);
+      return null;
+    }
+    return entry;
+  }
+
+  private void putInMemory(String key, ChatCompletionResult result) {
+    long chars = sizeOf(result);
+    if (chars > maxChars) {
+      return;
+    }
+    remove(key);
+    entries.put(key, new Entry(result, chars, clock.getAsLong()));
+    totalChars += chars;
+
+    Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while ((entries.size() > maxEntries || totalChars > maxChars) && iterator.hasNext()) {
+      totalChars -= iterator.next().getValue().chars;
+      iterator.remove();
+      evictions++;
+    }
+  }
+
+  /** Removes every result held in memory; the counters and the on-disk store are kept. */
+  public synchronized void clear() {
+    entries.clear();
+    totalChars = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getDiskHits() {
+    return diskHits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Describes the cache's counters on one line, for logging.
+   *
+   * @return a summary such as {@code entries=3, hits=5, diskHits=1, misses=4, evictions=0}
+   */
+  public synchronized String describe() {
+    return String.format(
+        "entries=%d, hits=%d, diskHits=%d, misses=%d, evictions=%d",
+        entries.size(), hits, diskHits, misses, evictions);
+  }
+
+  private void remove(String key) {
+    Entry previous = entries.remove(key);
+    if (previous != null) {
+      totalChars -= previous.chars;
+    }
+  }
+
+  // Approximates the memory held by a result by the length of its content
+  private static long sizeOf(ChatCompletionResult result) {
+    long chars = 0;
+    for (Choice choice : result.getChoices()) {
+      String content = choice.getChatMessage().getContent();
+      chars += content == null ? 0 : content.length();
+    }
+    return chars;
+  }
+
+  /** A cached result and when it was stored. */
+  private static class Entry {
+    private final ChatCompletionResult result;
+    private final long chars;
+    private final long storedMillis;
+
+    private Entry(ChatCompletionResult result, long chars, long storedMillis) {
+      this.result = result;
+      this.chars = chars;
+      this.storedMillis = storedMillis;
+    }
+  }
+}
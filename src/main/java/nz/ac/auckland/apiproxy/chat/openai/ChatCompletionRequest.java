@@ -1,18 +1,31 @@
 package nz.ac.auckland.apiproxy.chat.openai;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
 import java.util.ArrayList;
-import javax.json.Json;
-import javax.json.JsonArrayBuilder;
-import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 import nz.ac.auckland.apiproxy.config.ApiProxyConfig;
 import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
-import nz.ac.auckland.apiproxy.service.EndPoints;
+import nz.ac.auckland.apiproxy.service.ApiProxyExecutor;
+import nz.ac.auckland.apiproxy.service.EndpointResolver;
+import nz.ac.auckland.apiproxy.service.EndpointResolver.Route;
+import nz.ac.auckland.apiproxy.service.HttpTransport;
+import nz.ac.auckland.apiproxy.service.JsonStreamEntity;
+import nz.ac.auckland.apiproxy.service.LatencyTracker;
+import nz.ac.auckland.apiproxy.service.ProxyJson;
+import nz.ac.auckland.apiproxy.service.RequestPolicy;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 
 public class ChatCompletionRequest {
 
@@ -35,6 +48,14 @@ public class ChatCompletionRequest {
   }
 
   private static final int NOT_SET = -1;
+  private static final int TOO_MANY_REQUESTS = 429;
+
+  private static final ObjectReader RESPONSE_READER =
+      ProxyJson.readerFor(ResponseChatCompletionViaProxy.class);
+
+  // How long earlier requests took to answer, for deciding when a request is slow enough to hedge
+  private static final LatencyTracker REPLY_LATENCY = new LatencyTracker(64, 10);
+  private static final LatencyTracker FIRST_DELTA_LATENCY = new LatencyTracker(64, 10);
 
   private ApiProxyConfig config;
 
@@ -47,6 +68,8 @@ public class ChatCompletionRequest {
   private double temperature = NOT_SET;
   private double topP = NOT_SET;
   private int n = NOT_SET;
+  private boolean useCache = true;
+  private boolean hedged = false;
 
   public ChatCompletionRequest(ApiProxyConfig config) {
     this.config = config;
@@ -101,76 +124,326 @@ public class ChatCompletionRequest {
     return this;
   }
 
-  @SuppressWarnings("resource")
+  /**
+   * Sets whether an identical earlier request may be answered from the {@link
+   * ChatCompletionCache}. Enabled by default.
+   *
+   * @param useCache false to always call the API
+   * @return this request
+   */
+  public ChatCompletionRequest setUseCache(boolean useCache) {
+    this.useCache = useCache;
+    return this;
+  }
+
   public ChatCompletionResult execute() throws ApiProxyException {
+    return execute(new AtomicReference<>());
+  }
+
+  // Sends the request once, keeping the HTTP request in flight so that it can be aborted
+  private ChatCompletionResult execute(AtomicReference<HttpPost> inFlight)
+      throws ApiProxyException {
+    String cacheKey = cacheKey();
+    ChatCompletionResult cached = cacheKey == null ? null : cache().get(cacheKey);
+    if (cached != null) {
+      return cached;
+    }
     try {
-      JsonArrayBuilder jsonMessages = Json.createArrayBuilder();
-      for (ChatMessage message : messages) {
-        jsonMessages.add(
-            Json.createObjectBuilder() //
-                .add("role", message.getRole()) //
-                .add("content", message.getContent()));
+      CloseableHttpClient client = HttpTransport.getInstance().getClient();
+      HttpPost httpPost = createHttpPost(false, inFlight);
+
+      try (CloseableHttpResponse httpResponse = client.execute(httpPost)) {
+        checkStatus(httpResponse);
+        ResponseChatCompletionViaProxy responseChat =
+            RESPONSE_READER.readValue(httpResponse.getEntity().getContent());
+
+        ChatCompletionResult result = toResult(responseChat);
+        if (cacheKey != null) {
+          cache().put(cacheKey, result);
+        }
+        return result;
       }
+    } catch (Exception e) {
+      throw toApiProxyException(e);
+    }
+  }
+
+  /**
+   * Sets whether the asynchronous methods may send a second copy of the request when the first is
+   * slower than usual, using whichever answers first. Meant for requests the player is waiting on.
+   * Disabled by default.
+   *
+   * @param hedged true to allow a hedged copy
+   * @return this request
+   */
+  public ChatCompletionRequest setHedged(boolean hedged) {
+    this.hedged = hedged;
+    return this;
+  }
 
-      JsonObjectBuilder jsonOverallBuilder =
-          Json.createObjectBuilder() //
-              .add("messages", jsonMessages);
+  /**
+   * Executes the request on the shared {@link ApiProxyExecutor}, retrying transient failures as
+   * set out by the {@link RequestPolicy}.
+   *
+   * @return a future completed with the result; cancelling it, or letting a timeout set with
+   *     {@link CompletableFuture#orTimeout} expire, aborts the HTTP request
+   */
+  public CompletableFuture<ChatCompletionResult> executeAsync() {
+    return executeAsync(ApiProxyExecutor.getExecutor());
+  }
 
-      jsonOverallBuilder.add("access_token", config.getApiKey()).add("email", config.getEmail());
+  /**
+   * Executes the request on the given executor, retrying transient failures as set out by the
+   * {@link RequestPolicy}.
+   *
+   * @param executor the executor that runs the blocking calls
+   * @return a future completed with the result; cancelling it aborts the HTTP request
+   */
+  public CompletableFuture<ChatCompletionResult> executeAsync(Executor executor) {
+    return RequestPolicy.getInstance()
+        .execute(
+            claim -> {
+              AtomicReference<HttpPost> inFlight = new AtomicReference<>();
+              return ApiProxyExecutor.submit(
+                  () -> execute(inFlight), () -> abort(inFlight), executor);
+            },
+            REPLY_LATENCY,
+            hedged);
+  }
 
-      if (maxTokens != NOT_SET) {
-        jsonOverallBuilder.add("max_tokens", maxTokens);
-      }
+  /**
+   * Streaming counterpart of {@link #executeAsync()}.
+   *
+   * @param listener receives content deltas on the executor's thread
+   * @return a future completed with the assembled result; cancelling it aborts the stream
+   */
+  public CompletableFuture<ChatCompletionResult> executeStreamingAsync(
+      ChatStreamListener listener) {
+    return executeStreamingAsync(listener, ApiProxyExecutor.getExecutor());
+  }
 
-      if (temperature > NOT_SET) {
-        jsonOverallBuilder.add("temperature", temperature);
-      }
+  /**
+   * Streaming counterpart of {@link #executeAsync(Executor)}. Once the first delta has reached the
+   * listener the request is no longer retried or hedged, so the listener never gets a reply twice.
+   *
+   * @param listener receives content deltas on the executor's thread
+   * @param executor the executor that runs the blocking calls
+   * @return a future completed with the assembled result; cancelling it aborts the stream
+   */
+  public CompletableFuture<ChatCompletionResult> executeStreamingAsync(
+      ChatStreamListener listener, Executor executor) {
+    return RequestPolicy.getInstance()
+        .execute(
+            claim -> {
+              AtomicReference<HttpPost> inFlight = new AtomicReference<>();
+              // Only the attempt that delivers first reaches the listener
+              ChatStreamListener claimed =
+                  delta -> {
+                    if (claim.claim()) {
+                      listener.onDelta(delta);
+                    }
+                  };
+              return ApiProxyExecutor.submit(
+                  () -> executeStreaming(claimed, inFlight), () -> abort(inFlight), executor);
+            },
+            FIRST_DELTA_LATENCY,
+            hedged);
+  }
 
-      if (topP > NOT_SET) {
-        jsonOverallBuilder.add("top_p", topP);
-      }
+  /**
+   * Executes the request in streaming mode. The proxy is asked for server-sent events and every
+   * content delta of the first choice is handed to the listener as soon as it arrives. If the
+   * endpoint answers with a regular (non-streamed) completion instead, its content is delivered as
+   * a single delta so callers can treat both cases the same way. A cached result is delivered the
+   * same way.
+   *
+   * @param listener receives content deltas on the calling thread
+   * @return the complete result once the stream has finished
+   * @throws ApiProxyException if the request fails or the stream reports an error
+   */
+  public ChatCompletionResult executeStreaming(ChatStreamListener listener)
+      throws ApiProxyException {
+    return executeStreaming(listener, new AtomicReference<>());
+  }
 
-      if (n != NOT_SET) {
-        jsonOverallBuilder.add("n", n);
+  private ChatCompletionResult executeStreaming(
+      ChatStreamListener listener, AtomicReference<HttpPost> inFlight) throws ApiProxyException {
+    String cacheKey = cacheKey();
+    ChatCompletionResult cached = cacheKey == null ? null : cache().get(cacheKey);
+    if (cached != null) {
+      deliverWhole(cached, listener);
+      return cached;
+    }
+    try {
+      CloseableHttpClient client = HttpTransport.getInstance().getClient();
+      HttpPost httpPost = createHttpPost(true, inFlight);
+
+      try (CloseableHttpResponse httpResponse = client.execute(httpPost)) {
+        checkStatus(httpResponse);
+        HttpEntity entity = httpResponse.getEntity();
+        ContentType contentType = ContentType.get(entity);
+        if (contentType != null && "text/event-stream".equals(contentType.getMimeType())) {
+          ChatCompletionResult result =
+              new ChatStreamParser(listener).parse(entity.getContent());
+          printUsage(result);
+          if (cacheKey != null) {
+            cache().put(cacheKey, result);
+          }
+          return result;
+        }
+
+        // The endpoint does not stream; fall back to the buffered envelope
+        ResponseChatCompletionViaProxy responseChat =
+            RESPONSE_READER.readValue(entity.getContent());
+        ChatCompletionResult result = toResult(responseChat);
+        if (cacheKey != null) {
+          cache().put(cacheKey, result);
+        }
+        deliverWhole(result, listener);
+        return result;
       }
+    } catch (Exception e) {
+      throw toApiProxyException(e);
+    }
+  }
+
+  // Fails on the statuses a busy or restarting proxy answers with, which are worth a retry
+  private void checkStatus(HttpResponse httpResponse) throws ApiProxyException {
+    StatusLine status = httpResponse.getStatusLine();
+    int code = status.getStatusCode();
+    if (code == TOO_MANY_REQUESTS || code >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+      throw new ApiProxyException(
+          "Problem calling API: HTTP " + code + " " + status.getReasonPhrase(), null, true);
+    }
+  }
 
-      if (model != null) {
-        jsonOverallBuilder.add("model", model.getModelName());
+  // Network errors are transient, but a malformed response would be the same on a retry
+  private ApiProxyException toApiProxyException(Exception e) {
+    if (e instanceof ApiProxyException) {
+      return (ApiProxyException) e;
+    }
+    boolean retryable = e instanceof IOException && !(e instanceof JsonProcessingException);
+    return new ApiProxyException("Problem calling API: " + e.getMessage(), e, retryable);
+  }
+
+  // Hands the first choice's content to a streaming listener as a single delta
+  private void deliverWhole(ChatCompletionResult result, ChatStreamListener listener) {
+    if (result.getNumChoices() > 0) {
+      String content = result.getChoice(0).getChatMessage().getContent();
+      if (content != null && !content.isEmpty()) {
+        listener.onDelta(content);
       }
+    }
+  }
 
-      CloseableHttpClient client = HttpClients.createDefault();
+  // Gets the key of this request in the response cache, or null if it should not be cached
+  private String cacheKey() {
+    if (!useCache || !ChatCompletionCache.isEnabled()) {
+      return null;
+    }
+    return ChatCompletionCache.keyOf(
+        model == null ? null : model.getModelName(), messages, temperature, topP, maxTokens, n);
+  }
 
-      ResponseChatCompletionViaProxy responseChat = null;
-      JsonObject value = jsonOverallBuilder.build();
+  private ChatCompletionCache cache() {
+    return ChatCompletionCache.getInstance();
+  }
 
-      HttpPost httpPost = new HttpPost(EndPoints.PROXY_OPENAI_CHAT_COMPLETIONS);
-      httpPost.setHeader("Content-Type", "application/json");
-      httpPost.setHeader("Accept", "application/json");
-      httpPost.setEntity(new StringEntity(value.toString()));
-      ObjectMapper mapperApiMapper = new ObjectMapper();
+  private HttpPost createHttpPost(boolean stream, AtomicReference<HttpPost> inFlight) {
+    HttpPost httpPost = new HttpPost(EndpointResolver.resolve(Route.CHAT_COMPLETIONS));
+    httpPost.setHeader(
+        "Accept", stream ? "text/event-stream, application/json" : "application/json");
+    httpPost.setEntity(createEntity(stream));
+    inFlight.set(httpPost);
+    return httpPost;
+  }
 
-      responseChat =
-          (ResponseChatCompletionViaProxy)
-              client.execute(
-                  httpPost,
-                  httpResponse ->
-                      mapperApiMapper.readValue(
-                          httpResponse.getEntity().getContent(),
-                          ResponseChatCompletionViaProxy.class));
+  /**
+   * Creates the JSON body sent to the proxy. The messages are written straight to the connection
+   * while the request is sent, so a long history is never copied into an intermediate string.
+   *
+   * @param stream whether to ask for a streamed reply
+   * @return the request body, fixed to the request's current parameters
+   */
+  HttpEntity createEntity(boolean stream) {
+    // Taken now so the body stays the same if the request is changed or the body resent
+    List<ChatMessage> messages = List.copyOf(this.messages);
+    String modelName = model == null ? null : model.getModelName();
+    int maxTokens = this.maxTokens;
+    double temperature = this.temperature;
+    double topP = this.topP;
+    int n = this.n;
+    String apiKey = config.getApiKey();
+    String email = config.getEmail();
+
+    return new JsonStreamEntity(
+        generator -> {
+          generator.writeStartObject();
+          generator.writeArrayFieldStart("messages");
+          for (ChatMessage message : messages) {
+            generator.writeStartObject();
+            generator.writeStringField("role", message.getRole());
+            generator.writeStringField("content", message.getContent());
+            generator.writeEndObject();
+          }
+          generator.writeEndArray();
+
+          generator.writeStringField("access_token", apiKey);
+          generator.writeStringField("email", email);
+
+          if (maxTokens != NOT_SET) {
+            generator.writeNumberField("max_tokens", maxTokens);
+          }
+
+          if (temperature > NOT_SET) {
+            generator.writeNumberField("temperature", temperature);
+          }
+
+          if (topP > NOT_SET) {
+            generator.writeNumberField("top_p", topP);
+          }
+
+          if (n != NOT_SET) {
+            generator.writeNumberField("n", n);
+          }
+
+          if (modelName != null) {
+            generator.writeStringField("model", modelName);
+          }
+
+          if (stream) {
+            generator.writeBooleanField("stream", true);
+            generator.writeObjectFieldStart("stream_options");
+            generator.writeBooleanField("include_usage", true);
+            generator.writeEndObject();
+          }
+          generator.writeEndObject();
+        });
+  }
 
-      if (!responseChat.success && responseChat.code != 0) {
-        throw new ApiProxyException("Problem calling API: " + responseChat.message);
-      }
-      ChatCompletionResult result = new ChatCompletionResult(responseChat.chat_completion);
-      System.out.println(
-          "*** ChatCompletion used "
-              + result.getUsageTotalTokens()
-              + " tokens. If this seems like a lot, try other models that might use less tokens."
-              + " GPT4 models tend to use less than the GPT5 models.");
-
-      return result;
-    } catch (Exception e) {
-      throw new ApiProxyException("Problem calling API: " + e.getMessage());
+  // Aborts the in-flight HTTP request, if any, unblocking the thread that executes it
+  private void abort(AtomicReference<HttpPost> inFlight) {
+    HttpPost httpPost = inFlight.get();
+    if (httpPost != null) {
+      httpPost.abort();
     }
   }
+
+  private ChatCompletionResult toResult(ResponseChatCompletionViaProxy responseChat)
+      throws ApiProxyException {
+    if (!responseChat.success && responseChat.code != 0) {
+      throw new ApiProxyException("Problem calling API: " + responseChat.message);
+    }
+    ChatCompletionResult result = new ChatCompletionResult(responseChat.chat_completion);
+    printUsage(result);
+    return result;
+  }
+
+  private void printUsage(ChatCompletionResult result) {
+    System.out.println(
+        "*** ChatCompletion used "
+            + result.getUsageTotalTokens()
+            + " tokens. If this seems like a lot, try other models that might use less tokens."
+            + " GPT4 models tend to use less than the GPT5 models.");
+  }
 }
@@ -0,0 +1,16 @@
+package nz.ac.auckland.apiproxy.chat.openai;
+
+/**
+ * Receives the content of a streamed chat completion piece by piece as it arrives from the proxy.
+ */
+@FunctionalInterface
+public interface ChatStreamListener {
+
+  /**
+   * Called for each content delta of the first choice, in arrival order. Invoked on the thread
+   * that executes the request.
+   *
+   * @param delta the newly generated text, never empty
+   */
+  void onDelta(String delta);
+}
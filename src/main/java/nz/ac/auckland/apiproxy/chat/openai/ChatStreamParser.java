@@ -0,0 +1,178 @@
+package nz.ac.auckland.apiproxy.chat.openai;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+import nz.ac.auckland.apiproxy.service.ProxyJson;
+
+/**
+ * Parses a server-sent-event stream of chat completion chunks, forwarding each content delta of the
+ * first choice to a listener and assembling the complete result once the stream ends.
+ */
+class ChatStreamParser {
+
+  /** One event of the stream: a completion chunk, or an error reported by the proxy. */
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  static class Chunk {
+
+    final JsonNode error;
+    final Boolean success;
+    final String message;
+    final String model;
+    final Long created;
+    final ResponseChatCompletionViaProxy.Usage usage;
+    final List<ResponseChatCompletionViaProxy.CompletionChoice> choices;
+
+    @JsonCreator
+    Chunk(
+        @JsonProperty("error") JsonNode error,
+        @JsonProperty("success") Boolean success,
+        @JsonProperty("message") String message,
+        @JsonProperty("model") String model,
+        @JsonProperty("created") Long created,
+        @JsonProperty("usage") ResponseChatCompletionViaProxy.Usage usage,
+        @JsonProperty("choices") List<ResponseChatCompletionViaProxy.CompletionChoice> choices) {
+      this.error = error;
+      this.success = success;
+      this.message = message;
+      this.model = model;
+      this.created = created;
+      this.usage = usage;
+      this.choices = choices == null ? List.of() : choices;
+    }
+  }
+
+  private static final String DATA_FIELD = "data:";
+  private static final String DONE_MARKER = "[DONE]";
+  private static final ObjectReader CHUNK_READER = ProxyJson.readerFor(Chunk.class);
+
+  private final ChatStreamListener listener;
+
+  private String model = "";
+  private long created;
+  private int usagePromptTokens;
+  private int usageCompletionTokens;
+  private int usageTotalTokens;
+
+  private final Map<Integer, StringBuilder> contents = new TreeMap<>();
+  private final Map<Integer, String> roles = new TreeMap<>();
+  private final Map<Integer, String> finishReasons = new TreeMap<>();
+
+  ChatStreamParser(ChatStreamListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Reads the event stream until the end marker or end of input.
+   *
+   * @param input the response body of a streaming request
+   * @return the completion assembled from all received chunks
+   * @throws IOException if the stream cannot be read or a chunk is not valid JSON
+   * @throws ApiProxyException if the proxy reports an error inside the stream
+   */
+  ChatCompletionResult parse(InputStream input) throws IOException, ApiProxyException {
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    StringBuilder data = new StringBuilder();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.isEmpty()) {
+        // A blank line terminates the current event
+        if (data.length() > 0 && !handleEvent(data.toString())) {
+          return buildResult();
+        }
+        data.setLength(0);
+      } else if (line.startsWith(DATA_FIELD)) {
+        String value = line.substring(DATA_FIELD.length());
+        if (data.length() > 0) {
+          data.append('\n');
+        }
+        data.append(value.startsWith(" ") ? value.substring(1) : value);
+      }
+      // Comments (":"), "event:", "id:" and "retry:" fields carry nothing we need
+    }
+    if (data.length() > 0) {
+      handleEvent(data.toString());
+    }
+    return buildResult();
+  }
+
+  // Handles one event payload. Returns false once the end-of-stream marker is seen.
+  private boolean handleEvent(String payload) throws IOException, ApiProxyException {
+    if (DONE_MARKER.equals(payload.trim())) {
+      return false;
+    }
+
+    Chunk chunk = CHUNK_READER.readValue(payload);
+    if (chunk.error != null && !chunk.error.isNull()) {
+      throw new ApiProxyException("Problem calling API: " + chunk.error.toString());
+    }
+    if (chunk.success != null && !chunk.success) {
+      throw new ApiProxyException(
+          "Problem calling API: " + (chunk.message == null ? "" : chunk.message));
+    }
+
+    if (chunk.model != null) {
+      model = chunk.model;
+    }
+    if (chunk.created != null) {
+      created = chunk.created;
+    }
+
+    if (chunk.usage != null) {
+      usagePromptTokens = chunk.usage.promptTokens;
+      usageCompletionTokens = chunk.usage.completionTokens;
+      usageTotalTokens = chunk.usage.totalTokens;
+    }
+
+    for (ResponseChatCompletionViaProxy.CompletionChoice choice : chunk.choices) {
+      int index = choice.index;
+      ResponseChatCompletionViaProxy.Message delta = choice.delta;
+      if (delta != null && delta.role != null) {
+        roles.put(index, delta.role);
+      }
+      if (delta != null && delta.content != null) {
+        String content = delta.content;
+        contents.computeIfAbsent(index, k -> new StringBuilder()).append(content);
+        if (index == 0 && !content.isEmpty()) {
+          listener.onDelta(content);
+        }
+      }
+      if (choice.finishReason != null) {
+        finishReasons.put(index, choice.finishReason);
+      }
+    }
+    return true;
+  }
+
+  private ChatCompletionResult buildResult() throws ApiProxyException {
+    if (contents.isEmpty() && roles.isEmpty()) {
+      throw new ApiProxyException("Problem calling API: stream ended without any choices");
+    }
+
+    List<Choice> choices = new ArrayList<>();
+    for (Integer index : roles.keySet()) {
+      contents.putIfAbsent(index, new StringBuilder());
+    }
+    for (Map.Entry<Integer, StringBuilder> entry : contents.entrySet()) {
+      int index = entry.getKey();
+      ChatMessage message =
+          new ChatMessage(roles.getOrDefault(index, "assistant"), entry.getValue().toString());
+      choices.add(new Choice(message, index, finishReasons.getOrDefault(index, "stop")));
+    }
+    return new ChatCompletionResult(
+        model, created, usagePromptTokens, usageCompletionTokens, usageTotalTokens, choices);
+  }
+}
@@ -0,0 +1,460 @@
+package nz.ac.auckland.apiproxy.chat.openai;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * On-disk store of chat completion results that survives restarts, used behind the in-memory
+ * {@link ChatCompletionCache}. Results are appended to a log file and their positions to an index
+ * file; at startup the index is memory-mapped and read into a map, so a restarted game can answer
+ * repeated requests without the network. Superseded and expired records stay in the log until it
+ * is compacted, which happens once more than half of it is dead or it grows past its size cap. A
+ * log over the cap is cut down to half the cap, so the next compaction is far off, and compactions
+ * run on a separate executor rather than inside {@link #put}.
+ *
+ * <p>If the index is missing or behind the log, for example after a crash, it is rebuilt by
+ * scanning the log. Only one process should use a directory at a time.
+ */
+public class PersistentCompletionStore implements Closeable {
+
+  private static final String LOG_FILE = "completions.log";
+  private static final String INDEX_FILE = "completions.idx";
+  private static final int KEY_BYTES = 32;
+  // Record header: key, stored time, payload length
+  private static final int HEADER_BYTES = KEY_BYTES + Long.BYTES + Integer.BYTES;
+  // Index entry: key, record offset, record length, stored time
+  private static final int INDEX_ENTRY_BYTES = KEY_BYTES + Long.BYTES + Integer.BYTES + Long.BYTES;
+  private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+  private final Path directory;
+  private final long maxBytes;
+  private final long ttlMillis;
+  private final LongSupplier clock;
+  private final Executor compactor;
+  // Live records by key, in the order they were written
+  private final Map<String, Location> locations = new LinkedHashMap<>();
+  private FileChannel log;
+  private FileChannel index;
+  private long liveBytes;
+  private boolean compactionPending;
+  private long compactions;
+
+  /**
+   * Opens or creates a store that compacts on the thread that triggered the compaction, once
+   * {@link #put} has released the store's lock.
+   *
+   * @param directory the directory holding the log and index files
+   * @param maxBytes the largest the log may grow before it is compacted down to half this size
+   * @param ttlMillis how long a result stays valid
+   * @param clock the source of the current time in milliseconds
+   * @throws IOException if the files cannot be created or read
+   */
+  public PersistentCompletionStore(
+      Path directory, long maxBytes, long ttlMillis, LongSupplier clock) throws IOException {
+    this(directory, maxBytes, ttlMillis, clock, Runnable::run);
+  }
+
+  /**
+   * Opens or creates a store.
+   *
+   * @param directory the directory holding the log and index files
+   * @param maxBytes the largest the log may grow before it is compacted down to half this size
+   * @param ttlMillis how long a result stays valid
+   * @param clock the source of the current time in milliseconds
+   * @param compactor runs the compactions triggered by {@link #put}
+   * @throws IOException if the files cannot be created or read
+   */
+  public PersistentCompletionStore(
+      Path directory, long maxBytes, long ttlMillis, LongSupplier clock, Executor compactor)
+      throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.ttlMillis = ttlMillis;
+    this.clock = clock;
+    this.compactor = compactor;
+    Files.createDirectories(directory);
+    open();
+  }
+
+  /**
+   * Looks up a result.
+   *
+   * @param key the request's key from {@link ChatCompletionCache#keyOf}
+   * @return the stored result, or null if there is none or it has expired
+   */
+  public synchronized ChatCompletionResult get(String key) {
+    Location location = locations.get(key);
+    if (location == null) {
+      return null;
+    }
+    if (clock.getAsLong() - location.storedMillis > ttlMillis) {
+      forget(key);
+      return null;
+    }
+    try {
+      ByteBuffer record = readFully(location.offset, location.length);
+      byte[] recordKey = new byte[KEY_BYTES];
+      record.get(recordKey);
+      if (!HexFormat.of().formatHex(recordKey).equals(key)) {
+        forget(key); // the index is out of step with the log
+        return null;
+      }
+      record.position(HEADER_BYTES);
+      byte[] payload = new byte[record.remaining()];
+      record.get(payload);
+      return decode(payload);
+    } catch (IOException e) {
+      System.err.println("Could not read cached completion: " + e.getMessage());
+      forget(key);
+      return null;
+    }
+  }
+
+  /**
+   * Appends a result, scheduling a compaction if the log has grown past its cap or become mostly
+   * dead records.
+   *
+   * @param key the request's key from {@link ChatCompletionCache#keyOf}
+   * @param result the result to store
+   */
+  public void put(String key, ChatCompletionResult result) {
+    if (append(key, result)) {
+      compactor.execute(this::compactIfOpen);
+    }
+  }
+
+  // Appends a record and returns whether a compaction should be scheduled
+  private synchronized boolean append(String key, ChatCompletionResult result) {
+    try {
+      byte[] payload = encode(result);
+      long storedMillis = clock.getAsLong();
+      ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+      record.put(HexFormat.of().parseHex(key)).putLong(storedMillis).putInt(payload.length);
+      record.put(payload).flip();
+
+      long offset = log.size();
+      writeFully(log, record, offset);
+      Location location = new Location(offset, record.capacity(), storedMillis);
+      appendIndexEntry(key, location);
+      forget(key);
+      locations.put(key, location);
+      liveBytes += location.length;
+
+      long logBytes = log.size();
+      boolean overCap = logBytes > maxBytes;
+      boolean mostlyDead = logBytes > MIN_COMPACT_BYTES && logBytes > 2 * liveBytes;
+      if (compactionPending || !(overCap || mostlyDead)) {
+        return false;
+      }
+      compactionPending = true;
+      return true;
+    } catch (IOException e) {
+      System.err.println("Could not persist completion: " + e.getMessage());
+      return false;
+    }
+  }
+
+  private synchronized void compactIfOpen() {
+    compactionPending = false;
+    if (log == null) {
+      return; // closed while the compaction was queued
+    }
+    try {
+      compact();
+    } catch (IOException e) {
+      System.err.println("Could not compact completion cache: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Rewrites the log with only the live, unexpired records. If the log has outgrown its size cap,
+   * the oldest are dropped until the rest fill at most half of it.
+   *
+   * @throws IOException if the files cannot be rewritten
+   */
+  public synchronized void compact() throws IOException {
+    long now = clock.getAsLong();
+    List<Map.Entry<String, Location>> live = new ArrayList<>();
+    long keptBytes = 0;
+    for (Map.Entry<String, Location> entry : locations.entrySet()) {
+      if (now - entry.getValue().storedMillis <= ttlMillis) {
+        live.add(entry);
+        keptBytes += entry.getValue().length;
+      }
+    }
+    live.sort(Comparator.comparingLong(entry -> entry.getValue().storedMillis));
+    // Leave room to grow, or every put at the cap would rewrite the whole log again
+    long targetBytes = log.size() > maxBytes ? maxBytes / 2 : maxBytes;
+    int first = 0;
+    while (keptBytes > targetBytes && first < live.size()) {
+      keptBytes -= live.get(first++).getValue().length;
+    }
+
+    Path tempLog = Files.createTempFile(directory, LOG_FILE, ".tmp");
+    try (FileChannel out = FileChannel.open(tempLog, StandardOpenOption.WRITE)) {
+      long offset = 0;
+      for (Map.Entry<String, Location> entry : live.subList(first, live.size())) {
+        Location old = entry.getValue();
+        writeFully(out, readFully(old.offset, old.length), offset);
+        offset += old.length;
+      }
+      out.force(true);
+    }
+
+    // Drop the index first: if we crash before it is rewritten, it is rebuilt from the new log.
+    // Whatever fails, reopening leaves a consistent pair of files behind.
+    close();
+    try {
+      Files.deleteIfExists(directory.resolve(INDEX_FILE));
+      Files.move(
+          tempLog,
+          directory.resolve(LOG_FILE),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempLog);
+      locations.clear();
+      liveBytes = 0;
+      open();
+    }
+    compactions++;
+    System.out.println(
+        "Compacted completion cache: " + locations.size() + " results, " + liveBytes + " bytes");
+  }
+
+  /**
+   * Gets the number of stored results, including expired ones not yet compacted away.
+   *
+   * @return the number of results
+   */
+  public synchronized int size() {
+    return locations.size();
+  }
+
+  /**
+   * Gets how many times the log has been compacted since the store was opened.
+   *
+   * @return the number of compactions
+   */
+  public synchronized long getCompactions() {
+    return compactions;
+  }
+
+  /**
+   * Gets the size of the log file, including dead records.
+   *
+   * @return the size in bytes
+   * @throws IOException if the size cannot be read
+   */
+  public synchronized long getLogBytes() throws IOException {
+    return log.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (log != null) {
+      log.close();
+      log = null;
+    }
+    if (index != null) {
+      index.close();
+      index = null;
+    }
+  }
+
+  // Opens both files, loading the index and replaying any log records it does not cover
+  private void open() throws IOException {
+    log =
+        FileChannel.open(
+            directory.resolve(LOG_FILE),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    index =
+        FileChannel.open(
+            directory.resolve(INDEX_FILE),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+
+    long indexedEnd = loadIndex();
+    replayLog(indexedEnd);
+  }
+
+  // Reads the memory-mapped index and returns the end of the last record it covers
+  private long loadIndex() throws IOException {
+    long logSize = log.size();
+    long entryCount = index.size() / INDEX_ENTRY_BYTES;
+    // Ignore a torn entry left by a crash mid-write
+    index.truncate(entryCount * INDEX_ENTRY_BYTES);
+    long indexedEnd = 0;
+    if (entryCount == 0) {
+      return indexedEnd;
+    }
+
+    MappedByteBuffer mapped =
+        index.map(FileChannel.MapMode.READ_ONLY, 0, entryCount * INDEX_ENTRY_BYTES);
+    byte[] keyBytes = new byte[KEY_BYTES];
+    for (long i = 0; i < entryCount; i++) {
+      mapped.get(keyBytes);
+      Location location = new Location(mapped.getLong(), mapped.getInt(), mapped.getLong());
+      if (location.offset + location.length > logSize) {
+        continue; // points past the end of the log
+      }
+      String key = HexFormat.of().formatHex(keyBytes);
+      forget(key);
+      locations.put(key, location);
+      liveBytes += location.length;
+      indexedEnd = Math.max(indexedEnd, location.offset + location.length);
+    }
+    return indexedEnd;
+  }
+
+  // Indexes the log records written after the index was last updated
+  private void replayLog(long offset) throws IOException {
+    long logSize = log.size();
+    byte[] keyBytes = new byte[KEY_BYTES];
+    while (offset + HEADER_BYTES <= logSize) {
+      ByteBuffer header = readFully(offset, HEADER_BYTES);
+      header.get(keyBytes);
+      long storedMillis = header.getLong();
+      int payloadLength = header.getInt();
+      if (payloadLength < 0 || offset + HEADER_BYTES + payloadLength > logSize) {
+        break;
+      }
+      Location location = new Location(offset, HEADER_BYTES + payloadLength, storedMillis);
+      String key = HexFormat.of().formatHex(keyBytes);
+      appendIndexEntry(key, location);
+      forget(key);
+      locations.put(key, location);
+      liveBytes += location.length;
+      offset += location.length;
+    }
+    // Anything left over is a torn record from a crash mid-write
+    log.truncate(offset);
+  }
+
+  private void appendIndexEntry(String key, Location location) throws IOException {
+    ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+    entry.put(HexFormat.of().parseHex(key));
+    entry.putLong(location.offset).putInt(location.length).putLong(location.storedMillis);
+    entry.flip();
+    writeFully(index, entry, index.size());
+  }
+
+  private void forget(String key) {
+    Location previous = locations.remove(key);
+    if (previous != null) {
+      liveBytes -= previous.length;
+    }
+  }
+
+  private ByteBuffer readFully(long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (log.read(buffer, offset + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of completion log");
+      }
+    }
+    return buffer.flip();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset)
+      throws IOException {
+    long position = offset;
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private static byte[] encode(ChatCompletionResult result) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      writeString(out, result.getModel());
+      out.writeLong(result.getCreated());
+      out.writeInt(result.getUsagePromptTokens());
+      out.writeInt(result.getUsageCompletionTokens());
+      out.writeInt(result.getUsageTotalTokens());
+      out.writeInt(result.getNumChoices());
+      for (Choice choice : result.getChoices()) {
+        writeString(out, choice.getChatMessage().getRole());
+        writeString(out, choice.getChatMessage().getContent());
+        out.writeInt(choice.getIndex());
+        writeString(out, choice.getFinishReason());
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static ChatCompletionResult decode(byte[] payload) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+      String model = readString(in);
+      long created = in.readLong();
+      int promptTokens = in.readInt();
+      int completionTokens = in.readInt();
+      int totalTokens = in.readInt();
+      int choiceCount = in.readInt();
+      List<Choice> choices = new ArrayList<>(choiceCount);
+      for (int i = 0; i < choiceCount; i++) {
+        ChatMessage message = new ChatMessage(readString(in), readString(in));
+        choices.add(new Choice(message, in.readInt(), readString(in)));
+      }
+      return new ChatCompletionResult(
+          model, created, promptTokens, completionTokens, totalTokens, choices);
+    }
+  }
+
+  // Strings are length-prefixed UTF-8, with -1 for null
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** Where a record lives in the log. */
+  private static class Location {
+    private final long offset;
+    private final int length;
+    private final long storedMillis;
+
+    private Location(long offset, int length, long storedMillis) {
+      this.offset = offset;
+      this.length = length;
+      this.storedMillis = storedMillis;
+    }
+  }
+}
@@ -2,21 +2,95 @@ package nz.ac.auckland.apiproxy.chat.openai;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import java.util.Map;
+import java.util.List;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class ResponseChatCompletionViaProxy {
 
+  /**
+   * A chat completion, or a chunk of a streamed one. Only the fields the game reads are declared;
+   * Jackson skips the rest of the response without building them.
+   */
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class Completion {
+
+    public final String model;
+    public final Long created;
+    public final Usage usage;
+    public final List<CompletionChoice> choices;
+
+    public Completion(
+        @JsonProperty("model") String model,
+        @JsonProperty("created") Long created,
+        @JsonProperty("usage") Usage usage,
+        @JsonProperty("choices") List<CompletionChoice> choices) {
+      this.model = model;
+      this.created = created;
+      this.usage = usage;
+      this.choices = choices == null ? List.of() : choices;
+    }
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class Usage {
+
+    public final int promptTokens;
+    public final int completionTokens;
+    public final int totalTokens;
+
+    public Usage(
+        @JsonProperty("prompt_tokens") int promptTokens,
+        @JsonProperty("completion_tokens") int completionTokens,
+        @JsonProperty("total_tokens") int totalTokens) {
+      this.promptTokens = promptTokens;
+      this.completionTokens = completionTokens;
+      this.totalTokens = totalTokens;
+    }
+  }
+
+  /** A choice of a completion, holding a whole message or, when streamed, a delta of one. */
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class CompletionChoice {
+
+    public final int index;
+    public final Message message;
+    public final Message delta;
+    public final String finishReason;
+
+    public CompletionChoice(
+        @JsonProperty("index") int index,
+        @JsonProperty("message") Message message,
+        @JsonProperty("delta") Message delta,
+        @JsonProperty("finish_reason") String finishReason) {
+      this.index = index;
+      this.message = message;
+      this.delta = delta;
+      this.finishReason = finishReason;
+    }
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class Message {
+
+    public final String role;
+    public final String content;
+
+    public Message(@JsonProperty("role") String role, @JsonProperty("content") String content) {
+      this.role = role;
+      this.content = content;
+    }
+  }
+
   public final Boolean success;
   public final Integer code;
   public final String message;
-  public final Map<String, Object> chat_completion;
+  public final Completion chat_completion;
 
   public ResponseChatCompletionViaProxy(
       @JsonProperty("success") Boolean success,
       @JsonProperty("code") Integer code,
       @JsonProperty("message") String message,
-      @JsonProperty("chat_completion") Map<String, Object> chat_completion) {
+      @JsonProperty("chat_completion") Completion chat_completion) {
     this.success = success;
     this.code = code;
     this.message = message;
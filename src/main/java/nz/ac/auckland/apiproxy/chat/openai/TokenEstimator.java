@@ -0,0 +1,66 @@
+package nz.ac.auckland.apiproxy.chat.openai;
+
+/**
+ * Fast local approximation of how many tokens the OpenAI tokenizers produce for a piece of text.
+ * Runs of letters count as one token for every six characters, digits are grouped in threes, each
+ * punctuation mark is its own token and whitespace is folded into the following word. This tracks
+ * the real tokenizers closely enough for English prose to enforce prompt budgets without shipping
+ * the vocabulary.
+ */
+public class TokenEstimator {
+
+  /** Tokens the chat format adds around each message for its role and separators. */
+  public static final int MESSAGE_OVERHEAD = 4;
+
+  /** Tokens the chat format adds to prime the reply. */
+  public static final int REPLY_PRIMING = 3;
+
+  private TokenEstimator() {}
+
+  /**
+   * Estimates the tokens in a piece of text.
+   *
+   * @param text the text to measure
+   * @return the estimated number of tokens
+   */
+  public static int estimate(String text) {
+    int tokens = 0;
+    int i = 0;
+    int length = text.length();
+    while (i < length) {
+      char c = text.charAt(i);
+      int start = i;
+      if (Character.isLetter(c)) {
+        while (i < length && Character.isLetter(text.charAt(i))) {
+          i++;
+        }
+        tokens += 1 + (i - start - 1) / 6;
+      } else if (Character.isDigit(c)) {
+        while (i < length && Character.isDigit(text.charAt(i))) {
+          i++;
+        }
+        tokens += (i - start + 2) / 3;
+      } else if (Character.isWhitespace(c)) {
+        i++;
+        // A newline is usually a token of its own; other whitespace joins the next word
+        if (c == '\n') {
+          tokens++;
+        }
+      } else {
+        i++;
+        tokens++;
+      }
+    }
+    return tokens;
+  }
+
+  /**
+   * Estimates the tokens a message uses in a chat completion request, including its overhead.
+   *
+   * @param content the message content
+   * @return the estimated number of tokens
+   */
+  public static int estimateMessage(String content) {
+    return MESSAGE_OVERHEAD + estimate(content);
+  }
+}
@@ -11,6 +11,10 @@ public class ApiProxyConfig {
 
   private String email = null;
   private String apiKey = null;
+  // Optional, see EndpointResolver
+  private String baseUrl = null;
+  private String chatCompletionsUrl = null;
+  private String textToSpeechUrl = null;
 
   private static ApiProxyConfig instance;
 
@@ -29,6 +33,18 @@ public class ApiProxyConfig {
     return email;
   }
 
+  public String getBaseUrl() {
+    return baseUrl;
+  }
+
+  public String getChatCompletionsUrl() {
+    return chatCompletionsUrl;
+  }
+
+  public String getTextToSpeechUrl() {
+    return textToSpeechUrl;
+  }
+
   public static synchronized ApiProxyConfig readConfig() throws ApiProxyException {
     if (instance == null) {
       File file = new File("apiproxy.config");
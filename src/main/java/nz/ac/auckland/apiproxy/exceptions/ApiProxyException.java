@@ -4,11 +4,35 @@ public class ApiProxyException extends Exception {
 
   private static final long serialVersionUID = 1L;
 
+  private final boolean retryable;
+
   public ApiProxyException(String message) {
-    super(message);
+    this(message, null, false);
   }
 
   public ApiProxyException(String message, Throwable cause) {
+    this(message, cause, false);
+  }
+
+  /**
+   * Creates an exception that may be marked as transient.
+   *
+   * @param message the detail message
+   * @param cause the cause, or null
+   * @param retryable whether sending the same request again may succeed, e.g. after a network
+   *     error or while the proxy is overloaded
+   */
+  public ApiProxyException(String message, Throwable cause, boolean retryable) {
     super(message, cause);
+    this.retryable = retryable;
+  }
+
+  /**
+   * Gets whether the failure is transient, so the request can safely be sent again.
+   *
+   * @return true if a retry may succeed
+   */
+  public boolean isRetryable() {
+    return retryable;
   }
 }
@@ -0,0 +1,103 @@
+package nz.ac.auckland.apiproxy.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs blocking API proxy calls off the caller's thread. Every call gets its own virtual thread, so
+ * many requests can wait on the network at once without tying up platform threads.
+ */
+public class ApiProxyExecutor {
+
+  /**
+   * A blocking call to the proxy.
+   *
+   * @param <T> the type of the call's result
+   */
+  @FunctionalInterface
+  public interface ProxyCall<T> {
+    T call() throws Exception;
+  }
+
+  private static ExecutorService executor;
+
+  /**
+   * Gets the shared executor, creating it on first use.
+   *
+   * @return the executor used by the {@code executeAsync} methods of the request classes
+   */
+  public static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor =
+          Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("apiproxy-", 0).factory());
+    }
+    return executor;
+  }
+
+  /** Stops accepting new calls and interrupts the ones still running. */
+  public static synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Runs a call on the given executor. When the returned future is completed early, either by
+   * {@link CompletableFuture#cancel(boolean)} or by a timeout such as {@link
+   * CompletableFuture#orTimeout}, the abort action is run so that the underlying HTTP exchange is
+   * torn down instead of running on in the background.
+   *
+   * @param call the blocking call
+   * @param abort aborts the call's in-flight HTTP request
+   * @param executor the executor to run the call on
+   * @param <T> the type of the call's result
+   * @return a future completed with the call's result or failure
+   */
+  public static <T> CompletableFuture<T> submit(
+      ProxyCall<T> call, Runnable abort, Executor executor) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    // Run as a FutureTask so executors that count failures can see how the call ended
+    FutureTask<T> task =
+        new FutureTask<>(call::call) {
+          @Override
+          public void run() {
+            if (future.isDone()) {
+              cancel(false); // cancelled or timed out before it started
+              return;
+            }
+            super.run();
+          }
+
+          @Override
+          protected void done() {
+            State state = state();
+            if (state == State.SUCCESS) {
+              future.complete(resultNow());
+            } else if (state == State.FAILED) {
+              future.completeExceptionally(exceptionNow());
+            } else {
+              future.cancel(false);
+            }
+          }
+        };
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+      return future;
+    }
+
+    future.whenComplete(
+        (result, error) -> {
+          if (error != null) {
+            abort.run();
+          }
+        });
+    return future;
+  }
+}
@@ -1,5 +1,6 @@
 package nz.ac.auckland.apiproxy.service;
 
+/** The routes of the hosted API proxy; requests resolve their URL with {@link EndpointResolver}. */
 public class EndPoints {
   public static final String PROXY_OPENAI_CHAT_COMPLETIONS =
       "https://us-central1-api-proxies-and-wrappers.cloudfunctions.net/proxy/openai-chat-completion";
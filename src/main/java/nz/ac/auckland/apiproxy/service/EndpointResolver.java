@@ -0,0 +1,93 @@
+package nz.ac.auckland.apiproxy.service;
+
+import nz.ac.auckland.apiproxy.config.ApiProxyConfig;
+import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+
+/**
+ * Resolves the URL of each API proxy route, so requests can be pointed at another proxy, e.g. a
+ * local {@link nz.ac.auckland.apiproxy.stub.StubProxyServer} for load testing without spending
+ * credits. For each route the first of these that is set wins:
+ *
+ * <ol>
+ *   <li>the route's system property, {@code apiproxy.endpoint.chat} or {@code
+ *       apiproxy.endpoint.tts}
+ *   <li>the system property {@code apiproxy.baseUrl}, followed by the route's path
+ *   <li>the route's key in {@code apiproxy.config}, {@code chatCompletionsUrl} or {@code
+ *       textToSpeechUrl}
+ *   <li>{@code baseUrl} in {@code apiproxy.config}, followed by the route's path
+ *   <li>the hosted proxy in {@link EndPoints}
+ * </ol>
+ *
+ * <p>URLs are resolved on every request, so the properties can be changed while running.
+ */
+public class EndpointResolver {
+
+  /** The routes of the proxy. */
+  public enum Route {
+    CHAT_COMPLETIONS(
+        "openai-chat-completion",
+        "apiproxy.endpoint.chat",
+        EndPoints.PROXY_OPENAI_CHAT_COMPLETIONS),
+    TEXT_TO_SPEECH("text-to-speech", "apiproxy.endpoint.tts", EndPoints.PROXY_TEXT_TO_SPEECH);
+
+    private final String path;
+    private final String property;
+    private final String defaultUrl;
+
+    Route(String path, String property, String defaultUrl) {
+      this.path = path;
+      this.property = property;
+      this.defaultUrl = defaultUrl;
+    }
+
+    /** The route's path below the proxy's base URL, e.g. {@code text-to-speech}. */
+    public String getPath() {
+      return path;
+    }
+  }
+
+  /**
+   * Gets the URL a route's requests are sent to.
+   *
+   * @param route the route
+   * @return the URL
+   */
+  public static String resolve(Route route) {
+    String url = System.getProperty(route.property);
+    if (!isBlank(url)) {
+      return url.trim();
+    }
+    String baseUrl = System.getProperty("apiproxy.baseUrl");
+    if (!isBlank(baseUrl)) {
+      return join(baseUrl, route);
+    }
+
+    ApiProxyConfig config;
+    try {
+      config = ApiProxyConfig.readConfig();
+    } catch (ApiProxyException e) {
+      // The request itself reports the missing config
+      return route.defaultUrl;
+    }
+    url =
+        route == Route.CHAT_COMPLETIONS
+            ? config.getChatCompletionsUrl()
+            : config.getTextToSpeechUrl();
+    if (!isBlank(url)) {
+      return url.trim();
+    }
+    if (!isBlank(config.getBaseUrl())) {
+      return join(config.getBaseUrl(), route);
+    }
+    return route.defaultUrl;
+  }
+
+  private static String join(String baseUrl, Route route) {
+    String base = baseUrl.trim();
+    return (base.endsWith("/") ? base : base + "/") + route.path;
+  }
+
+  private static boolean isBlank(String value) {
+    return value == null || value.isBlank();
+  }
+}
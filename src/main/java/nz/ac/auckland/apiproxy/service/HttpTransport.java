@@ -0,0 +1,136 @@
+package nz.ac.auckland.apiproxy.service;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Shared HTTP transport for all calls to the API proxy. Keeps a bounded pool of keep-alive
+ * connections so that chat and text-to-speech requests reuse already established TCP/TLS sessions
+ * instead of opening a new one per message.
+ *
+ * <p>The pool limits can be tuned with the system properties {@code apiproxy.http.maxTotal},
+ * {@code apiproxy.http.maxPerRoute}, {@code apiproxy.http.idleSeconds} and {@code
+ * apiproxy.http.keepAliveSeconds}. They must be set before the first request is made.
+ */
+public class HttpTransport {
+
+  private static final int DEFAULT_MAX_TOTAL = 20;
+  private static final int DEFAULT_MAX_PER_ROUTE = 10;
+  private static final int DEFAULT_IDLE_SECONDS = 30;
+  private static final int DEFAULT_KEEP_ALIVE_SECONDS = 60;
+  private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+  private static final int SOCKET_TIMEOUT_MILLIS = 60_000;
+
+  private static HttpTransport instance;
+
+  /**
+   * Returns the shared transport, creating the connection pool on first use.
+   *
+   * @return the shared transport
+   */
+  public static synchronized HttpTransport getInstance() {
+    if (instance == null) {
+      instance = new HttpTransport();
+    }
+    return instance;
+  }
+
+  /**
+   * Closes the shared transport and releases every pooled connection. Safe to call more than once;
+   * a later call to {@link #getInstance()} creates a fresh pool.
+   */
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      instance.close();
+      instance = null;
+    }
+  }
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient client;
+
+  private HttpTransport() {
+    int idleSeconds = readProperty("apiproxy.http.idleSeconds", DEFAULT_IDLE_SECONDS);
+    long keepAliveMillis =
+        TimeUnit.SECONDS.toMillis(
+            readProperty("apiproxy.http.keepAliveSeconds", DEFAULT_KEEP_ALIVE_SECONDS));
+
+    connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(readProperty("apiproxy.http.maxTotal", DEFAULT_MAX_TOTAL));
+    connectionManager.setDefaultMaxPerRoute(
+        readProperty("apiproxy.http.maxPerRoute", DEFAULT_MAX_PER_ROUTE));
+    // Re-check connections that sat idle in the pool before handing them out again
+    connectionManager.setValidateAfterInactivity(2_000);
+
+    RequestConfig requestConfig =
+        RequestConfig.custom()
+            .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+            .setConnectionRequestTimeout(CONNECT_TIMEOUT_MILLIS)
+            .setSocketTimeout(SOCKET_TIMEOUT_MILLIS)
+            .build();
+
+    client =
+        HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .setKeepAliveStrategy(
+                (response, context) -> {
+                  // Honour the server's Keep-Alive header but never hold a socket past our cap
+                  long serverMillis =
+                      DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(
+                          response, context);
+                  return serverMillis > 0
+                      ? Math.min(serverMillis, keepAliveMillis)
+                      : keepAliveMillis;
+                })
+            .evictExpiredConnections()
+            .evictIdleConnections(idleSeconds, TimeUnit.SECONDS)
+            .build();
+  }
+
+  /**
+   * Gets the pooled client. Callers must not close it; release responses instead.
+   *
+   * @return the shared HTTP client
+   */
+  public CloseableHttpClient getClient() {
+    return client;
+  }
+
+  /**
+   * Gets the number of connections currently leased or idle in the pool.
+   *
+   * @return a short human readable summary of the pool
+   */
+  public String getPoolStats() {
+    return connectionManager.getTotalStats().toString();
+  }
+
+  private void close() {
+    try {
+      client.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    connectionManager.shutdown();
+  }
+
+  private static int readProperty(String key, int defaultValue) {
+    String value = System.getProperty(key);
+    if (value == null || value.isBlank()) {
+      return defaultValue;
+    }
+    try {
+      int parsed = Integer.parseInt(value.trim());
+      return parsed > 0 ? parsed : defaultValue;
+    } catch (NumberFormatException e) {
+      System.err.println("Ignoring invalid value for " + key + ": " + value);
+      return defaultValue;
+    }
+  }
+}
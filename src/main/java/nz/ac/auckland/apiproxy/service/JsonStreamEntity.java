@@ -0,0 +1,78 @@
+package nz.ac.auckland.apiproxy.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * A JSON request body that is generated straight into the connection's output stream while the
+ * request is sent, instead of being built as a tree and a string first. The body is written again
+ * from scratch each time, so the entity is repeatable, and is sent chunked since its length isn't
+ * known up front. Generators come from {@link ProxyJson#factory()}, whose buffers are recycled.
+ */
+public class JsonStreamEntity extends AbstractHttpEntity {
+
+  /** Writes the body of a request. */
+  @FunctionalInterface
+  public interface BodyWriter {
+
+    /**
+     * Writes the JSON body.
+     *
+     * @param generator the generator to write to, which is flushed and closed afterwards
+     * @throws IOException if the body cannot be written
+     */
+    void write(JsonGenerator generator) throws IOException;
+  }
+
+  private final BodyWriter writer;
+
+  /**
+   * Creates an entity whose body is written by the given writer.
+   *
+   * @param writer writes the body; must produce the same body every time it is called
+   */
+  public JsonStreamEntity(BodyWriter writer) {
+    this.writer = writer;
+    setContentType(ContentType.APPLICATION_JSON.toString());
+    setChunked(true);
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    // Only needed by callers that read the body back, never when sending it
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeTo(out);
+    return new ByteArrayInputStream(out.toByteArray());
+  }
+
+  @Override
+  public void writeTo(OutputStream outStream) throws IOException {
+    try (JsonGenerator generator =
+        ProxyJson.factory().createGenerator(outStream, JsonEncoding.UTF8)) {
+      writer.write(generator);
+    }
+    outStream.flush();
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+}
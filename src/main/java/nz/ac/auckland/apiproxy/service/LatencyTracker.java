@@ -0,0 +1,50 @@
+package nz.ac.auckland.apiproxy.service;
+
+import java.util.Arrays;
+
+/** Keeps the latest latencies of one kind of call, to tell when a call is slower than usual. */
+public class LatencyTracker {
+
+  private final long[] samples;
+  private final int minSamples;
+  private int count;
+  private int next;
+
+  /**
+   * Creates an empty tracker.
+   *
+   * @param capacity how many of the latest samples are kept
+   * @param minSamples how many samples are needed before percentiles are reported
+   */
+  public LatencyTracker(int capacity, int minSamples) {
+    this.samples = new long[capacity];
+    this.minSamples = Math.max(1, minSamples);
+  }
+
+  /**
+   * Records the latency of a call, replacing the oldest sample once the tracker is full.
+   *
+   * @param millis the latency in milliseconds
+   */
+  public synchronized void record(long millis) {
+    samples[next] = millis;
+    next = (next + 1) % samples.length;
+    count = Math.min(count + 1, samples.length);
+  }
+
+  /**
+   * Gets a percentile of the kept samples.
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @return the latency in milliseconds, or -1 while there are too few samples
+   */
+  public synchronized long percentile(double percentile) {
+    if (count < minSamples) {
+      return -1;
+    }
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100 * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, index))];
+  }
+}
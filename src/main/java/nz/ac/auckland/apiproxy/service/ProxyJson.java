@@ -0,0 +1,53 @@
+package nz.ac.auckland.apiproxy.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+/**
+ * The JSON configuration shared by every call to the API proxy. Building an {@link ObjectMapper}
+ * is expensive and each one learns its (de)serializers from scratch, so requests use the readers
+ * made here once instead of a mapper of their own.
+ *
+ * <p>Jackson's buffers are recycled through a pool shared by all threads, as its default pool is
+ * per thread and the requests run on short-lived virtual threads.
+ */
+public final class ProxyJson {
+
+  private static final JsonFactory FACTORY =
+      JsonFactory.builder()
+          .recyclerPool(JsonRecyclerPools.newConcurrentDequePool())
+          .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+          .build();
+
+  private static final ObjectMapper MAPPER =
+      JsonMapper.builder(FACTORY)
+          .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+          .build();
+
+  /**
+   * Gets the factory for streaming reads and writes.
+   *
+   * @return the shared factory
+   */
+  public static JsonFactory factory() {
+    return FACTORY;
+  }
+
+  /**
+   * Creates a reader for a response type. Callers keep the reader in a constant so its
+   * deserializer is only looked up once.
+   *
+   * @param type the type to read
+   * @return a reader for the type
+   */
+  public static ObjectReader readerFor(Class<?> type) {
+    return MAPPER.readerFor(type);
+  }
+
+  private ProxyJson() {}
+}
@@ -0,0 +1,327 @@
+package nz.ac.auckland.apiproxy.service;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+
+/**
+ * Sends asynchronous proxy calls so that a transient failure doesn't reach the player. An attempt
+ * that fails with a retryable {@link ApiProxyException}, or takes longer than the attempt timeout,
+ * is sent again after an exponential backoff, up to a maximum number of attempts.
+ *
+ * <p>A call can also be hedged: when its first attempt hasn't answered within the 95th percentile
+ * of recent latencies, a second copy is sent and whichever answers first is used. Only the slowest
+ * few percent of calls are sent twice, so the tail latency falls for little extra cost.
+ *
+ * <p>An attempt that streams its reply claims the call when it delivers its first output. From then
+ * on the other attempts are cancelled and the call is neither retried nor hedged, so the player
+ * never sees the same text twice. The attempt timeout only applies until an attempt claims.
+ *
+ * <p>The limits can be tuned with the system properties {@code apiproxy.retry.maxAttempts},
+ * {@code apiproxy.retry.backoffMillis}, {@code apiproxy.retry.maxBackoffMillis}, {@code
+ * apiproxy.retry.attemptTimeoutMillis} and {@code apiproxy.hedge.delayMillis}, the delay used until
+ * enough latencies are known. {@code -Dapiproxy.hedge.enabled=false} turns hedging off.
+ */
+public class RequestPolicy {
+
+  /** Lets an attempt claim its call once it starts delivering output. */
+  @FunctionalInterface
+  public interface Claim {
+
+    /**
+     * Makes this attempt the one whose output is used, cancelling the others.
+     *
+     * @return true if the attempt owns the call, false if another attempt claimed it first
+     */
+    boolean claim();
+  }
+
+  /**
+   * Starts one attempt of a call.
+   *
+   * @param <T> the type of the call's result
+   */
+  @FunctionalInterface
+  public interface Attempt<T> {
+
+    /**
+     * Starts the attempt. Cancelling the returned future must abort it.
+     *
+     * @param claim claims the call for a streamed attempt before it completes
+     * @return a future completed with the attempt's result or failure
+     */
+    CompletableFuture<T> start(Claim claim);
+  }
+
+  private static final int DEFAULT_MAX_ATTEMPTS = 3;
+  private static final long DEFAULT_BACKOFF_MILLIS = 300;
+  private static final long DEFAULT_MAX_BACKOFF_MILLIS = 3_000;
+  private static final long DEFAULT_ATTEMPT_TIMEOUT_MILLIS = 20_000;
+  private static final long DEFAULT_HEDGE_DELAY_MILLIS = 2_500;
+  private static final long MIN_HEDGE_DELAY_MILLIS = 200;
+  private static final double HEDGE_PERCENTILE = 95;
+
+  private static RequestPolicy instance;
+
+  /**
+   * Gets the shared policy, reading its limits from the system properties on first use.
+   *
+   * @return the shared policy
+   */
+  public static synchronized RequestPolicy getInstance() {
+    if (instance == null) {
+      instance =
+          new RequestPolicy(
+              Integer.getInteger("apiproxy.retry.maxAttempts", DEFAULT_MAX_ATTEMPTS),
+              Long.getLong("apiproxy.retry.backoffMillis", DEFAULT_BACKOFF_MILLIS),
+              Long.getLong("apiproxy.retry.maxBackoffMillis", DEFAULT_MAX_BACKOFF_MILLIS),
+              Long.getLong("apiproxy.retry.attemptTimeoutMillis", DEFAULT_ATTEMPT_TIMEOUT_MILLIS),
+              Long.getLong("apiproxy.hedge.delayMillis", DEFAULT_HEDGE_DELAY_MILLIS),
+              Boolean.parseBoolean(System.getProperty("apiproxy.hedge.enabled", "true")));
+    }
+    return instance;
+  }
+
+  private final int maxAttempts;
+  private final long backoffMillis;
+  private final long maxBackoffMillis;
+  private final long attemptTimeoutMillis;
+  private final long hedgeDelayMillis;
+  private final boolean hedgingEnabled;
+
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong hedges = new AtomicLong();
+  private final AtomicLong hedgeWins = new AtomicLong();
+
+  RequestPolicy(
+      int maxAttempts,
+      long backoffMillis,
+      long maxBackoffMillis,
+      long attemptTimeoutMillis,
+      long hedgeDelayMillis,
+      boolean hedgingEnabled) {
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.backoffMillis = Math.max(1, backoffMillis);
+    this.maxBackoffMillis = Math.max(this.backoffMillis, maxBackoffMillis);
+    this.attemptTimeoutMillis = attemptTimeoutMillis;
+    this.hedgeDelayMillis = hedgeDelayMillis;
+    this.hedgingEnabled = hedgingEnabled;
+  }
+
+  /**
+   * Runs a call, retrying and, if asked for, hedging it.
+   *
+   * @param attempt starts one attempt of the call
+   * @param latencies the latencies of earlier calls of the same kind, which this call adds to
+   * @param hedge whether a second attempt may be sent while the first is slow
+   * @param <T> the type of the call's result
+   * @return a future completed with the first successful attempt's result, or with the last
+   *     failure; cancelling it, or letting it time out, cancels every attempt
+   */
+  public <T> CompletableFuture<T> execute(
+      Attempt<T> attempt, LatencyTracker latencies, boolean hedge) {
+    Call<T> call = new Call<>(attempt, latencies);
+    call.start();
+    if (hedge && hedgingEnabled && maxAttempts > 1) {
+      CompletableFuture.delayedExecutor(hedgeDelay(latencies), TimeUnit.MILLISECONDS)
+          .execute(call::hedge);
+    }
+    return call.result;
+  }
+
+  /**
+   * Summarises what the policy has done so far, for debug logging.
+   *
+   * @return a summary such as {@code retries=2, timeouts=1, hedges=5 (3 won)}
+   */
+  public String describe() {
+    return String.format(
+        "retries=%d, timeouts=%d, hedges=%d (%d won)",
+        retries.get(), timeouts.get(), hedges.get(), hedgeWins.get());
+  }
+
+  // How long the first attempt may take before a hedged copy is sent
+  long hedgeDelay(LatencyTracker latencies) {
+    long percentile = latencies.percentile(HEDGE_PERCENTILE);
+    return percentile < 0 ? hedgeDelayMillis : Math.max(MIN_HEDGE_DELAY_MILLIS, percentile);
+  }
+
+  // Exponential backoff with jitter, so clients that failed together don't retry together
+  long backoff(int failures) {
+    long delay = Math.min(maxBackoffMillis, backoffMillis << Math.min(failures - 1, 20));
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+
+  static boolean isRetryable(Throwable error) {
+    Throwable cause = unwrap(error);
+    return cause instanceof TimeoutException
+        || (cause instanceof ApiProxyException && ((ApiProxyException) cause).isRetryable());
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    return error instanceof CompletionException && error.getCause() != null
+        ? error.getCause()
+        : error;
+  }
+
+  /** The attempts of one call. */
+  private class Call<T> {
+
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private final Attempt<T> attempt;
+    private final LatencyTracker latencies;
+    private final AtomicReference<Object> owner = new AtomicReference<>();
+
+    // Guarded by this
+    private final Map<Object, CompletableFuture<T>> running = new IdentityHashMap<>();
+    private int started;
+    private int failures;
+
+    private Call(Attempt<T> attempt, LatencyTracker latencies) {
+      this.attempt = attempt;
+      this.latencies = latencies;
+      result.whenComplete((value, error) -> cancelOthers(null));
+    }
+
+    private void start() {
+      Object token = new Object();
+      long startNanos = System.nanoTime();
+      boolean hedged;
+      synchronized (this) {
+        if (result.isDone()) {
+          return;
+        }
+        started++;
+        hedged = !running.isEmpty();
+      }
+
+      CompletableFuture<T> future;
+      try {
+        future = attempt.start(() -> claim(token, startNanos, hedged));
+      } catch (RuntimeException e) {
+        future = CompletableFuture.failedFuture(e);
+      }
+      synchronized (this) {
+        running.put(token, future);
+      }
+      Object current = owner.get();
+      if (result.isDone() || (current != null && current != token)) {
+        future.cancel(true); // the call was decided while this attempt was starting
+      }
+
+      CompletableFuture<T> pending = future;
+      CompletableFuture.delayedExecutor(attemptTimeoutMillis, TimeUnit.MILLISECONDS)
+          .execute(
+              () -> {
+                if (owner.get() != token
+                    && pending.completeExceptionally(
+                        new TimeoutException(
+                            "No answer within " + attemptTimeoutMillis + " ms"))) {
+                  timeouts.incrementAndGet();
+                }
+              });
+      future.whenComplete((value, error) -> finished(token, startNanos, hedged, value, error));
+    }
+
+    // Sends a second attempt if the first still hasn't answered
+    private void hedge() {
+      synchronized (this) {
+        if (result.isDone() || owner.get() != null || running.isEmpty()) {
+          return;
+        }
+        if (started >= maxAttempts) {
+          return;
+        }
+      }
+      hedges.incrementAndGet();
+      start();
+    }
+
+    private boolean claim(Object token, long startNanos, boolean hedged) {
+      if (owner.get() == token) {
+        return true;
+      }
+      if (!owner.compareAndSet(null, token)) {
+        return false;
+      }
+      latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      if (hedged) {
+        hedgeWins.incrementAndGet();
+      }
+      cancelOthers(token);
+      return true;
+    }
+
+    private void finished(Object token, long startNanos, boolean hedged, T value, Throwable error) {
+      synchronized (this) {
+        running.remove(token);
+      }
+      if (result.isDone()) {
+        return;
+      }
+      if (error == null) {
+        if (claim(token, startNanos, hedged)) {
+          result.complete(value);
+        }
+        return;
+      }
+
+      Object current = owner.get();
+      if (current == token) {
+        // Part of the reply was already delivered, so it can't be sent again
+        result.completeExceptionally(unwrap(error));
+        return;
+      }
+      if (current != null) {
+        return;
+      }
+
+      boolean retry;
+      long delay;
+      synchronized (this) {
+        failures++;
+        if (!running.isEmpty()) {
+          return; // a hedged copy is still on its way
+        }
+        retry = isRetryable(error) && started < maxAttempts;
+        delay = backoff(failures);
+      }
+      if (!retry) {
+        result.completeExceptionally(unwrap(error));
+        return;
+      }
+      retries.incrementAndGet();
+      System.err.println(
+          "WARNING: Retrying proxy request in "
+              + delay
+              + " ms after: "
+              + unwrap(error).getMessage());
+      CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(this::start);
+    }
+
+    // Cancels every running attempt except the given one, which may be null
+    private void cancelOthers(Object keep) {
+      List<CompletableFuture<T>> others = new ArrayList<>();
+      synchronized (this) {
+        for (Map.Entry<Object, CompletableFuture<T>> entry : running.entrySet()) {
+          if (entry.getKey() != keep) {
+            others.add(entry.getValue());
+          }
+        }
+      }
+      for (CompletableFuture<T> other : others) {
+        other.cancel(true);
+      }
+    }
+  }
+}
@@ -0,0 +1,478 @@
+package nz.ac.auckland.apiproxy.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import nz.ac.auckland.apiproxy.chat.openai.TokenEstimator;
+import nz.ac.auckland.apiproxy.service.EndpointResolver;
+import nz.ac.auckland.apiproxy.service.EndpointResolver.Route;
+
+/**
+ * Local stand-in for the API proxy, for measuring the client's throughput and latency offline and
+ * without spending credits. It answers both proxy routes the way the hosted proxy does, including
+ * streamed chat completions, after a configurable delay, and fails a configurable share of the
+ * requests. Point the game or a benchmark at it with {@code -Dapiproxy.baseUrl=<base url>} (see
+ * {@link EndpointResolver}).
+ *
+ * <p>Run it on its own with {@code ./mvnw compile exec:java@stub-proxy}, configured with the
+ * system properties read by {@link #fromSystemProperties()}, or start one in process:
+ *
+ * <pre>
+ * StubProxyServer stub = new StubProxyServer(0).setLatencyMillis(300).setErrorRate(0.05).start();
+ * System.setProperty("apiproxy.baseUrl", stub.getBaseUrl());
+ * </pre>
+ */
+public class StubProxyServer {
+
+  private static final String BASE_PATH = "/proxy";
+  private static final String AUDIO_PATH = "/audio";
+  private static final String DEFAULT_CHAT_REPLY =
+      "This is a canned reply from the stub proxy. It answers every question the same way.";
+  // Splits a reply into words with their trailing whitespace, like the tokens of a real stream
+  private static final Pattern STREAM_PIECE = Pattern.compile("\\S+\\s*|\\s+");
+
+  /**
+   * Starts a stub configured from system properties and serves until the process is stopped.
+   *
+   * @param args not used
+   * @throws IOException if the server cannot be started
+   * @throws InterruptedException if interrupted while serving
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    StubProxyServer stub = fromSystemProperties().start();
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  System.out.println("Stub proxy stopping: " + stub.describe());
+                  stub.stop();
+                }));
+    System.out.println("Stub proxy listening on " + stub.getBaseUrl());
+    System.out.println("Run the game against it with -Dapiproxy.baseUrl=" + stub.getBaseUrl());
+    new CountDownLatch(1).await();
+  }
+
+  /**
+   * Creates a stub configured with the system properties {@code stub.port} (default 8089), {@code
+   * stub.latencyMillis} (default 200), {@code stub.jitterMillis} (default 50), {@code
+   * stub.errorRate} (default 0), {@code stub.streamDelayMillis} (default 20), {@code
+   * stub.chatReply}, and {@code stub.chatResponseFile}, {@code stub.ttsResponseFile} and {@code
+   * stub.audioFile} holding canned bodies.
+   *
+   * @return the stub, not started yet
+   * @throws IOException if a canned body cannot be read
+   */
+  public static StubProxyServer fromSystemProperties() throws IOException {
+    StubProxyServer stub =
+        new StubProxyServer(Integer.getInteger("stub.port", 8089))
+            .setLatencyMillis(Long.getLong("stub.latencyMillis", 200))
+            .setJitterMillis(Long.getLong("stub.jitterMillis", 50))
+            .setErrorRate(Double.parseDouble(System.getProperty("stub.errorRate", "0")))
+            .setStreamDelayMillis(Long.getLong("stub.streamDelayMillis", 20))
+            .setChatReply(System.getProperty("stub.chatReply", DEFAULT_CHAT_REPLY));
+    String chatFile = System.getProperty("stub.chatResponseFile");
+    if (chatFile != null) {
+      stub.setChatResponseBody(Files.readString(Paths.get(chatFile)));
+    }
+    String ttsFile = System.getProperty("stub.ttsResponseFile");
+    if (ttsFile != null) {
+      stub.setTtsResponseBody(Files.readString(Paths.get(ttsFile)));
+    }
+    String audioFile = System.getProperty("stub.audioFile");
+    if (audioFile != null) {
+      stub.setAudio(Files.readAllBytes(Paths.get(audioFile)));
+    }
+    return stub;
+  }
+
+  private final int requestedPort;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final AtomicLong chatRequests = new AtomicLong();
+  private final AtomicLong ttsRequests = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private volatile long latencyMillis;
+  private volatile long jitterMillis;
+  private volatile double errorRate;
+  private volatile long streamDelayMillis;
+  private volatile String chatReply = DEFAULT_CHAT_REPLY;
+  private volatile String chatResponseBody;
+  private volatile String ttsResponseBody;
+  private volatile byte[] audio;
+  private HttpServer server;
+  private ExecutorService executor;
+
+  /**
+   * Creates a stub that answers immediately and never fails.
+   *
+   * @param port the port to listen on, or 0 for any free port
+   */
+  public StubProxyServer(int port) {
+    this.requestedPort = port;
+  }
+
+  /**
+   * Sets the delay before each response starts.
+   *
+   * @param latencyMillis the mean delay in milliseconds
+   * @return this stub
+   */
+  public StubProxyServer setLatencyMillis(long latencyMillis) {
+    this.latencyMillis = Math.max(0, latencyMillis);
+    return this;
+  }
+
+  /**
+   * Sets how far the delay of each response may be from the mean, chosen uniformly at random.
+   *
+   * @param jitterMillis the largest difference in milliseconds
+   * @return this stub
+   */
+  public StubProxyServer setJitterMillis(long jitterMillis) {
+    this.jitterMillis = Math.max(0, jitterMillis);
+    return this;
+  }
+
+  /**
+   * Sets the share of requests answered with an HTTP 500 proxy error.
+   *
+   * @param errorRate the share, from 0 to 1
+   * @return this stub
+   */
+  public StubProxyServer setErrorRate(double errorRate) {
+    this.errorRate = Math.max(0, Math.min(1, errorRate));
+    return this;
+  }
+
+  /**
+   * Sets the delay between the chunks of a streamed reply, one chunk per word.
+   *
+   * @param streamDelayMillis the delay in milliseconds
+   * @return this stub
+   */
+  public StubProxyServer setStreamDelayMillis(long streamDelayMillis) {
+    this.streamDelayMillis = Math.max(0, streamDelayMillis);
+    return this;
+  }
+
+  /**
+   * Sets the content of every chat reply.
+   *
+   * @param chatReply the reply
+   * @return this stub
+   */
+  public StubProxyServer setChatReply(String chatReply) {
+    this.chatReply = chatReply;
+    return this;
+  }
+
+  /**
+   * Sets a body returned as is for every chat request that is not streamed, in place of one built
+   * from the reply.
+   *
+   * @param chatResponseBody the JSON body, or null to build one
+   * @return this stub
+   */
+  public StubProxyServer setChatResponseBody(String chatResponseBody) {
+    this.chatResponseBody = chatResponseBody;
+    return this;
+  }
+
+  /**
+   * Sets a body returned as is for every text-to-speech request, in place of one pointing at this
+   * stub's audio.
+   *
+   * @param ttsResponseBody the JSON body, or null to build one
+   * @return this stub
+   */
+  public StubProxyServer setTtsResponseBody(String ttsResponseBody) {
+    this.ttsResponseBody = ttsResponseBody;
+    return this;
+  }
+
+  /**
+   * Sets the audio served at the URL that text-to-speech responses point to.
+   *
+   * @param audio the MP3 data, or null to answer that URL with 404
+   * @return this stub
+   */
+  public StubProxyServer setAudio(byte[] audio) {
+    this.audio = audio;
+    return this;
+  }
+
+  /**
+   * Starts listening on the loopback interface.
+   *
+   * @return this stub
+   * @throws IOException if the port cannot be bound
+   */
+  public synchronized StubProxyServer start() throws IOException {
+    server =
+        HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), requestedPort), 0);
+    // Each exchange sleeps for its latency, so give every one its own thread
+    executor =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stub-proxy-", 0).factory());
+    server.setExecutor(executor);
+    server.createContext(BASE_PATH + "/" + Route.CHAT_COMPLETIONS.getPath(), this::handleChat);
+    server.createContext(BASE_PATH + "/" + Route.TEXT_TO_SPEECH.getPath(), this::handleTts);
+    server.createContext(AUDIO_PATH, this::handleAudio);
+    server.start();
+    return this;
+  }
+
+  /** Stops listening and ends the exchanges in progress. */
+  public synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdownNow();
+      server = null;
+    }
+  }
+
+  /**
+   * Gets the port the stub listens on.
+   *
+   * @return the port, which is only known once started when 0 was requested
+   */
+  public synchronized int getPort() {
+    return server == null ? requestedPort : server.getAddress().getPort();
+  }
+
+  /**
+   * Gets the base URL to pass as {@code apiproxy.baseUrl}.
+   *
+   * @return the URL, e.g. {@code http://127.0.0.1:8089/proxy}
+   */
+  public String getBaseUrl() {
+    String host = InetAddress.getLoopbackAddress().getHostAddress();
+    return "http://" + host + ":" + getPort() + BASE_PATH;
+  }
+
+  /**
+   * Describes the stub's counters on one line, for logging.
+   *
+   * @return a summary such as {@code chat=120, tts=30, failures=6}
+   */
+  public String describe() {
+    return String.format(
+        "chat=%d, tts=%d, failures=%d", chatRequests.get(), ttsRequests.get(), failures.get());
+  }
+
+  private void handleChat(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      JsonNode request = readRequest(exchange);
+      if (request == null) {
+        return;
+      }
+      chatRequests.incrementAndGet();
+      if (!delayAndMaybeFail(exchange)) {
+        return;
+      }
+
+      String model = request.path("model").asText("stub");
+      int promptTokens = TokenEstimator.REPLY_PRIMING;
+      for (JsonNode message : request.path("messages")) {
+        promptTokens += TokenEstimator.estimateMessage(message.path("content").asText());
+      }
+      String reply = chatReply;
+      int completionTokens = TokenEstimator.estimate(reply);
+      ObjectNode usage = mapper.createObjectNode();
+      usage.put("prompt_tokens", promptTokens);
+      usage.put("completion_tokens", completionTokens);
+      usage.put("total_tokens", promptTokens + completionTokens);
+      long created = System.currentTimeMillis() / 1000;
+
+      if (request.path("stream").asBoolean()) {
+        streamChat(exchange, model, created, reply, usage);
+        return;
+      }
+
+      String body = chatResponseBody;
+      if (body == null) {
+        ObjectNode completion = mapper.createObjectNode();
+        completion.put("model", model);
+        completion.put("created", created);
+        completion.set("usage", usage);
+        ObjectNode choice = completion.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.putObject("message").put("role", "assistant").put("content", reply);
+        choice.put("finish_reason", "stop");
+        ObjectNode envelope = success();
+        envelope.set("chat_completion", completion);
+        body = mapper.writeValueAsString(envelope);
+      }
+      send(exchange, 200, "application/json", body.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  // Sends the reply as server-sent events: the role, one chunk per word, the finish and the usage
+  private void streamChat(
+      HttpExchange exchange, String model, long created, String reply, ObjectNode usage)
+      throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+    exchange.sendResponseHeaders(200, 0);
+    OutputStream output = exchange.getResponseBody();
+
+    ObjectNode first = chunk(model, created);
+    firstChoice(first).putObject("delta").put("role", "assistant");
+    writeEvent(output, mapper.writeValueAsString(first));
+
+    Matcher pieces = STREAM_PIECE.matcher(reply);
+    while (pieces.find()) {
+      pause(streamDelayMillis);
+      ObjectNode chunk = chunk(model, created);
+      firstChoice(chunk).putObject("delta").put("content", pieces.group());
+      writeEvent(output, mapper.writeValueAsString(chunk));
+    }
+
+    ObjectNode last = chunk(model, created);
+    ObjectNode lastChoice = firstChoice(last);
+    lastChoice.putObject("delta");
+    lastChoice.put("finish_reason", "stop");
+    writeEvent(output, mapper.writeValueAsString(last));
+
+    ObjectNode usageChunk = mapper.createObjectNode();
+    usageChunk.put("model", model);
+    usageChunk.put("created", created);
+    usageChunk.putArray("choices");
+    usageChunk.set("usage", usage);
+    writeEvent(output, mapper.writeValueAsString(usageChunk));
+    writeEvent(output, "[DONE]");
+  }
+
+  private ObjectNode chunk(String model, long created) {
+    ObjectNode chunk = mapper.createObjectNode();
+    chunk.put("object", "chat.completion.chunk");
+    chunk.put("model", model);
+    chunk.put("created", created);
+    ArrayNode choices = chunk.putArray("choices");
+    choices.addObject().put("index", 0);
+    return chunk;
+  }
+
+  private static ObjectNode firstChoice(ObjectNode chunk) {
+    return (ObjectNode) chunk.get("choices").get(0);
+  }
+
+  private static void writeEvent(OutputStream output, String data) throws IOException {
+    output.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+    output.flush();
+  }
+
+  private void handleTts(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (readRequest(exchange) == null) {
+        return;
+      }
+      ttsRequests.incrementAndGet();
+      if (!delayAndMaybeFail(exchange)) {
+        return;
+      }
+      String body = ttsResponseBody;
+      if (body == null) {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        ObjectNode envelope = success();
+        envelope.put("audio", "http://" + host + AUDIO_PATH);
+        body = mapper.writeValueAsString(envelope);
+      }
+      send(exchange, 200, "application/json", body.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private void handleAudio(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      byte[] data = audio;
+      if (data == null) {
+        send(exchange, 404, "text/plain", "No audio configured".getBytes(StandardCharsets.UTF_8));
+      } else {
+        send(exchange, 200, "audio/mpeg", data);
+      }
+    }
+  }
+
+  // Reads the JSON request of a proxy route, answering anything else with an error
+  private JsonNode readRequest(HttpExchange exchange) throws IOException {
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      send(exchange, 405, "text/plain", "POST only".getBytes(StandardCharsets.UTF_8));
+      return null;
+    }
+    try (InputStream body = exchange.getRequestBody()) {
+      return mapper.readTree(body);
+    } catch (IOException e) {
+      sendError(exchange, 400, "Invalid JSON: " + e.getMessage());
+      return null;
+    }
+  }
+
+  // Waits for the response's latency, then fails it at the error rate. Returns false if it failed
+  private boolean delayAndMaybeFail(HttpExchange exchange) throws IOException {
+    long jitter = jitterMillis;
+    long offset = jitter == 0 ? 0 : ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+    pause(latencyMillis + offset);
+    if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+      failures.incrementAndGet();
+      sendError(exchange, 500, "Simulated failure from the stub proxy");
+      return false;
+    }
+    return true;
+  }
+
+  private ObjectNode success() {
+    ObjectNode envelope = mapper.createObjectNode();
+    envelope.put("success", true);
+    envelope.put("code", 0);
+    envelope.put("message", "OK");
+    return envelope;
+  }
+
+  private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+    ObjectNode envelope = mapper.createObjectNode();
+    envelope.put("success", false);
+    envelope.put("code", status);
+    envelope.put("message", message);
+    send(
+        exchange,
+        status,
+        "application/json",
+        mapper.writeValueAsString(envelope).getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void send(HttpExchange exchange, int status, String contentType, byte[] body)
+      throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(body);
+    }
+  }
+
+  private static void pause(long millis) {
+    if (millis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
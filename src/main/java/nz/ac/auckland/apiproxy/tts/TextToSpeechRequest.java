@@ -1,16 +1,18 @@
 package nz.ac.auckland.apiproxy.tts;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import javax.json.Json;
-import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import nz.ac.auckland.apiproxy.config.ApiProxyConfig;
 import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
-import nz.ac.auckland.apiproxy.service.EndPoints;
+import nz.ac.auckland.apiproxy.service.ApiProxyExecutor;
+import nz.ac.auckland.apiproxy.service.EndpointResolver;
+import nz.ac.auckland.apiproxy.service.EndpointResolver.Route;
+import nz.ac.auckland.apiproxy.service.HttpTransport;
+import nz.ac.auckland.apiproxy.service.JsonStreamEntity;
+import nz.ac.auckland.apiproxy.service.ProxyJson;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 
 public class TextToSpeechRequest {
 
@@ -92,12 +94,18 @@ public class TextToSpeechRequest {
     }
   }
 
+  private static final ObjectReader RESPONSE_READER =
+      ProxyJson.readerFor(ResponseTtsViaProxy.class);
+
   private ApiProxyConfig config;
 
   private String text = null; // Required
   private Provider provider = Provider.OPENAI; // Default provider
   private Voice voice = Voice.NOT_SET;
 
+  // The HTTP request currently in flight, so asynchronous callers can abort it
+  private volatile HttpPost activeRequest;
+
   public TextToSpeechRequest(ApiProxyConfig config) {
     this.config = config;
   }
@@ -117,7 +125,6 @@ public class TextToSpeechRequest {
     return this;
   }
 
-  @SuppressWarnings("resource")
   public TextToSpeechResult execute() throws ApiProxyException {
 
     if (isEmpty(text)) {
@@ -147,32 +154,33 @@ public class TextToSpeechRequest {
     }
 
     try {
-      JsonObjectBuilder jsonOverallBuilder =
-          Json.createObjectBuilder() //
-              .add("provider", provider.getProviderCode()) //
-              .add("text", text);
-
-      jsonOverallBuilder.add("voice", voice.getVoiceCode());
-      jsonOverallBuilder.add("access_token", config.getApiKey()).add("email", config.getEmail());
+      String providerCode = provider.getProviderCode();
+      String voiceCode = voice.getVoiceCode();
+      String speechText = text;
 
-      CloseableHttpClient client = HttpClients.createDefault();
+      CloseableHttpClient client = HttpTransport.getInstance().getClient();
 
       ResponseTtsViaProxy responseTts = null;
-      JsonObject value = jsonOverallBuilder.build();
 
-      HttpPost httpPost = new HttpPost(EndPoints.PROXY_TEXT_TO_SPEECH);
-      httpPost.setHeader("Content-Type", "application/json");
+      HttpPost httpPost = new HttpPost(EndpointResolver.resolve(Route.TEXT_TO_SPEECH));
+      activeRequest = httpPost;
       httpPost.setHeader("Accept", "application/json");
-      httpPost.setEntity(new StringEntity(value.toString()));
-      ObjectMapper mapperApiMapper = new ObjectMapper();
+      httpPost.setEntity(
+          new JsonStreamEntity(
+              generator -> {
+                generator.writeStartObject();
+                generator.writeStringField("provider", providerCode);
+                generator.writeStringField("text", speechText);
+                generator.writeStringField("voice", voiceCode);
+                generator.writeStringField("access_token", config.getApiKey());
+                generator.writeStringField("email", config.getEmail());
+                generator.writeEndObject();
+              }));
 
       responseTts =
-          (ResponseTtsViaProxy)
-              client.execute(
-                  httpPost,
-                  httpResponse ->
-                      mapperApiMapper.readValue(
-                          httpResponse.getEntity().getContent(), ResponseTtsViaProxy.class));
+          client.execute(
+              httpPost,
+              httpResponse -> RESPONSE_READER.readValue(httpResponse.getEntity().getContent()));
 
       if (!responseTts.success && responseTts.code != 0) {
         throw new ApiProxyException("Problem calling API: " + responseTts.message);
@@ -184,6 +192,34 @@ public class TextToSpeechRequest {
     }
   }
 
+  /**
+   * Executes the request on the shared {@link ApiProxyExecutor}.
+   *
+   * @return a future completed with the result; cancelling it, or letting a timeout set with
+   *     {@link CompletableFuture#orTimeout} expire, aborts the HTTP request
+   */
+  public CompletableFuture<TextToSpeechResult> executeAsync() {
+    return executeAsync(ApiProxyExecutor.getExecutor());
+  }
+
+  /**
+   * Executes the request on the given executor.
+   *
+   * @param executor the executor that runs the blocking call
+   * @return a future completed with the result; cancelling it aborts the HTTP request
+   */
+  public CompletableFuture<TextToSpeechResult> executeAsync(Executor executor) {
+    return ApiProxyExecutor.submit(this::execute, this::abort, executor);
+  }
+
+  // Aborts the in-flight HTTP request, if any, unblocking the thread that executes it
+  private void abort() {
+    HttpPost httpPost = activeRequest;
+    if (httpPost != null) {
+      httpPost.abort();
+    }
+  }
+
   private boolean isEmpty(String text) {
     return text == null || text.isEmpty();
   }
@@ -7,6 +7,11 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import nz.ac.auckland.apiproxy.chat.openai.ChatCompletionCache;
+import nz.ac.auckland.apiproxy.service.ApiProxyExecutor;
+import nz.ac.auckland.apiproxy.service.HttpTransport;
+import nz.ac.auckland.apiproxy.service.RequestPolicy;
+import nz.ac.auckland.se206.conversation.ReplyPrefetcher;
 
 /**
  * This is the entry point of the JavaFX application. This class initializes and runs the JavaFX
@@ -52,17 +57,35 @@ public class App extends Application {
   }
 
   /**
-   * This method is invoked when the application starts. It loads and shows the "room" scene.
+   * This method is invoked when the application starts. It starts preloading every view and shows
+   * the "room" scene.
    *
    * @param stage the primary stage of the application
    * @throws IOException if the "src/main/resources/fxml/trialroom.fxml" file is not found
    */
   @Override
   public void start(final Stage stage) throws IOException {
-    Parent root = loadFxml("trialroom");
-    scene = new Scene(root);
-    stage.setScene(scene);
-    stage.show();
-    root.requestFocus();
+    // Every view is loaded in the background now, so later scene switches are instant
+    SceneRegistry registry = SceneRegistry.getInstance();
+    registry.preloadAll();
+    registry.show(stage, SceneRegistry.View.TRIAL_ROOM);
+    scene = stage.getScene();
+    scene.getRoot().requestFocus();
+  }
+
+  /**
+   * This method is invoked when the application exits. It logs what the background work did,
+   * stops outstanding background work and API proxy calls, and releases the pooled connections
+   * held by the transport.
+   */
+  @Override
+  public void stop() {
+    System.out.println("Background work: " + BackgroundExecutor.getInstance().describe());
+    System.out.println("Reply prefetch: " + ReplyPrefetcher.getInstance().describe());
+    System.out.println("Proxy requests: " + RequestPolicy.getInstance().describe());
+    BackgroundExecutor.shutdown();
+    ApiProxyExecutor.shutdown();
+    HttpTransport.shutdown();
+    ChatCompletionCache.shutdown();
   }
 }
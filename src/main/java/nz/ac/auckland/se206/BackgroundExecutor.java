@@ -0,0 +1,230 @@
+package nz.ac.auckland.se206;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Singleton that runs all background work (chat completions, prefetched replies, text-to-speech,
+ * verdict analysis, history summaries, scene preloading and image decoding) on virtual threads.
+ * Each category of work has its own concurrency limit, so a burst of clicks queues cheaply instead
+ * of exhausting OS threads, and keeps counters that can be inspected for debugging.
+ */
+public class BackgroundExecutor {
+
+  /** The kinds of background work, each with its own thread names and concurrency limit. */
+  public enum Category {
+    CHAT("chat", 4),
+    // Speculative replies, kept apart so they never take a slot from a reply the player awaits
+    PREFETCH("prefetch", 1),
+    TTS("tts", 2),
+    VERDICT("verdict", 1),
+    SUMMARY("summary", 1),
+    SCENE("scene", 4),
+    IMAGE("image", 2);
+
+    private final String threadPrefix;
+    private final int defaultLimit;
+
+    Category(String threadPrefix, int defaultLimit) {
+      this.threadPrefix = threadPrefix;
+      this.defaultLimit = defaultLimit;
+    }
+
+    public String getThreadPrefix() {
+      return threadPrefix;
+    }
+
+    /**
+     * Gets the maximum number of tasks of this category that may run at once. Can be overridden
+     * with the system property {@code executor.<prefix>.limit}, e.g. {@code executor.chat.limit}.
+     *
+     * @return the concurrency limit
+     */
+    public int getLimit() {
+      Integer limit = Integer.getInteger("executor." + threadPrefix + ".limit");
+      return limit != null && limit > 0 ? limit : defaultLimit;
+    }
+  }
+
+  /** A snapshot of the counters of one category. */
+  public static class Metrics {
+    private final int queued;
+    private final int inFlight;
+    private final long completed;
+    private final long failed;
+
+    private Metrics(int queued, int inFlight, long completed, long failed) {
+      this.queued = queued;
+      this.inFlight = inFlight;
+      this.completed = completed;
+      this.failed = failed;
+    }
+
+    /** Tasks submitted but waiting for a free slot. */
+    public int getQueued() {
+      return queued;
+    }
+
+    /** Tasks currently running. */
+    public int getInFlight() {
+      return inFlight;
+    }
+
+    /** Tasks that have finished, successfully or not. */
+    public long getCompleted() {
+      return completed;
+    }
+
+    /** Tasks that finished by throwing, or that are futures and finished with a failure. */
+    public long getFailed() {
+      return failed;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "queued=%d, inFlight=%d, completed=%d, failed=%d", queued, inFlight, completed, failed);
+    }
+  }
+
+  private static BackgroundExecutor instance;
+
+  public static synchronized BackgroundExecutor getInstance() {
+    if (instance == null) {
+      instance = new BackgroundExecutor();
+    }
+    return instance;
+  }
+
+  /** Shuts down every category, interrupting tasks still running. */
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      for (CategoryExecutor executor : instance.executors.values()) {
+        executor.threads.shutdownNow();
+      }
+      instance = null;
+    }
+  }
+
+  private final Map<Category, CategoryExecutor> executors = new EnumMap<>(Category.class);
+
+  private BackgroundExecutor() {
+    for (Category category : Category.values()) {
+      executors.put(category, new CategoryExecutor(category));
+    }
+  }
+
+  /**
+   * Gets the executor for a category of work. Tasks beyond the category's limit wait on a parked
+   * virtual thread until a slot frees up.
+   *
+   * @param category the kind of work
+   * @return an executor that can be passed to the {@code executeAsync} methods
+   */
+  public Executor executor(Category category) {
+    return executors.get(category);
+  }
+
+  /**
+   * Runs a task in the given category.
+   *
+   * @param category the kind of work
+   * @param task the task to run
+   */
+  public void submit(Category category, Runnable task) {
+    executors.get(category).execute(task);
+  }
+
+  /**
+   * Gets the current counters of a category.
+   *
+   * @param category the kind of work
+   * @return a snapshot of the category's counters
+   */
+  public Metrics getMetrics(Category category) {
+    return executors.get(category).snapshot();
+  }
+
+  /**
+   * Describes the counters of all categories on one line, for logging.
+   *
+   * @return a summary such as {@code chat[queued=0, inFlight=1, ...] tts[...]}
+   */
+  public String describe() {
+    StringBuilder sb = new StringBuilder();
+    for (Category category : Category.values()) {
+      if (sb.length() > 0) {
+        sb.append(' ');
+      }
+      sb.append(category.getThreadPrefix()).append('[').append(getMetrics(category)).append(']');
+    }
+    return sb.toString();
+  }
+
+  /** Executor for one category: named virtual threads gated by a semaphore. */
+  private static class CategoryExecutor implements Executor {
+    private final ExecutorService threads;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private CategoryExecutor(Category category) {
+      threads =
+          Executors.newThreadPerTaskExecutor(
+              Thread.ofVirtual().name(category.getThreadPrefix() + "-", 0).factory());
+      permits = new Semaphore(category.getLimit(), true);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      queued.incrementAndGet();
+      try {
+        threads.execute(() -> runWhenPermitted(task));
+      } catch (RejectedExecutionException e) {
+        queued.decrementAndGet();
+        throw e;
+      }
+    }
+
+    // Waits for a free slot in this category, then runs the task
+    private void runWhenPermitted(Runnable task) {
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        queued.decrementAndGet();
+        Thread.currentThread().interrupt();
+        return;
+      }
+      queued.decrementAndGet();
+      inFlight.incrementAndGet();
+      try {
+        task.run();
+        // Futures such as those of ApiProxyExecutor.submit catch their task's failure
+        if (task instanceof Future<?> && ((Future<?>) task).state() == Future.State.FAILED) {
+          failed.incrementAndGet();
+        }
+      } catch (RuntimeException | Error e) {
+        failed.incrementAndGet();
+        throw e;
+      } finally {
+        inFlight.decrementAndGet();
+        completed.incrementAndGet();
+        permits.release();
+      }
+    }
+
+    private Metrics snapshot() {
+      return new Metrics(queued.get(), inFlight.get(), completed.get(), failed.get());
+    }
+  }
+}
@@ -6,11 +6,9 @@ import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.stage.Stage;
 import javafx.util.Duration;
+import nz.ac.auckland.se206.SceneRegistry.View;
 import nz.ac.auckland.se206.controllers.TrialRoomController;
 import nz.ac.auckland.se206.controllers.VerdictController;
 
@@ -219,14 +217,8 @@ public class GameTimer {
             }
 
             if (currentStage != null) {
-              FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/verdict.fxml"));
-              Parent root = loader.load();
-              Scene scene = new Scene(root); // Set up verdict scene
-              scene.getProperties().put("controller", loader.getController());
-              currentStage.setScene(scene);
-              currentStage.show();
-
-              VerdictController controller = loader.getController();
+              VerdictController controller =
+                  SceneRegistry.getInstance().show(currentStage, View.VERDICT);
               controller.startVerdictTimer();
             } else {
               System.err.println("Error: Could not get a stage for scene transition");
@@ -247,11 +239,7 @@ public class GameTimer {
             }
 
             if (currentStage != null) {
-              FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/gameover.fxml"));
-              Parent root = loader.load(); // Load game over scene
-              Scene scene = new Scene(root);
-              currentStage.setScene(scene);
-              currentStage.show();
+              SceneRegistry.getInstance().show(currentStage, View.GAME_OVER);
             } else {
               System.err.println("Error: Could not get a stage for scene transition");
             }
@@ -0,0 +1,295 @@
+package nz.ac.auckland.se206;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.layout.Pane;
+import javafx.stage.Stage;
+import nz.ac.auckland.se206.BackgroundExecutor.Category;
+import nz.ac.auckland.se206.images.LazyImageView;
+
+/**
+ * Singleton that loads every FXML view of the game once and keeps it, so switching scenes only
+ * swaps in a scene graph that is already built and styled. {@link #preloadAll()} loads the views in
+ * parallel on background threads at startup; a view that is needed before its preload finishes is
+ * waited for, or loaded on the spot if it was never requested.
+ *
+ * <p>Since a view's controller lives as long as the view, controllers must keep {@code
+ * initialize()} free of game state and do that work in {@link ReusableController#onShow()}, which
+ * is called every time the view is shown. {@link #reset()} throws every view away for a new game.
+ *
+ * <p>Images declared as {@link LazyImageView}s decode in the background while a placeholder is
+ * shown. With {@code -Dscene.showTimings=true}, how long each view took to load, show and decode
+ * its images is logged and drawn in the corner of the view.
+ */
+public class SceneRegistry {
+
+  /** The FXML views of the game. */
+  public enum View {
+    TRIAL_ROOM("trialroom"),
+    AI_DEFENDANT("aiDef"),
+    HUMAN_WITNESS("humanWit"),
+    AI_WITNESS("aiWit"),
+    FLASHBACK("flashback"),
+    VERDICT("verdict"),
+    GAME_OVER("gameover");
+
+    private final String fxml;
+
+    View(String fxml) {
+      this.fxml = fxml;
+    }
+
+    /** The path of the view's FXML file on the classpath. */
+    public String getPath() {
+      return "/fxml/" + fxml + ".fxml";
+    }
+  }
+
+  /** A controller that refreshes its view each time the view is shown again. */
+  public interface ReusableController {
+
+    /**
+     * Called on the JavaFX thread right after the view has been put on the stage. Binds the
+     * controller to the global game state, e.g. the timer, and brings the view up to date.
+     */
+    void onShow();
+  }
+
+  private static final boolean SHOW_TIMINGS =
+      Boolean.parseBoolean(System.getProperty("scene.showTimings"));
+
+  private static SceneRegistry instance;
+
+  public static synchronized SceneRegistry getInstance() {
+    if (instance == null) {
+      instance = new SceneRegistry();
+    }
+    return instance;
+  }
+
+  private final Map<View, CompletableFuture<LoadedView>> views = new EnumMap<>(View.class);
+
+  private SceneRegistry() {}
+
+  /** Starts loading every view that is not loaded or loading yet, in parallel. */
+  public synchronized void preloadAll() {
+    for (View view : View.values()) {
+      if (!views.containsKey(view)) {
+        CompletableFuture<LoadedView> future =
+            CompletableFuture.supplyAsync(
+                () -> loadUnchecked(view),
+                BackgroundExecutor.getInstance().executor(Category.SCENE));
+        // Build the scene and apply its stylesheets ahead of time too, which needs the FX thread
+        future.thenAcceptAsync(LoadedView::prepareScene, Platform::runLater);
+        views.put(view, future);
+      }
+    }
+  }
+
+  /**
+   * Throws every loaded view away, e.g. when the game is replayed, and starts preloading fresh
+   * copies. Views that are still loading are discarded when they finish.
+   */
+  public void reset() {
+    synchronized (this) {
+      views.clear();
+    }
+    preloadAll();
+  }
+
+  /**
+   * Gets the controller of a view, loading the view if needed. Used to pass data to a controller
+   * before its view is shown.
+   *
+   * @param view the view
+   * @param <T> the type of the controller
+   * @return the view's controller
+   * @throws IOException if the view could not be loaded
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T getController(View view) throws IOException {
+    return (T) get(view).controller;
+  }
+
+  /**
+   * Puts a view on a stage and lets its controller refresh itself.
+   *
+   * @param stage the stage to show the view on
+   * @param view the view
+   * @param <T> the type of the controller
+   * @return the view's controller
+   * @throws IOException if the view could not be loaded
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T show(Stage stage, View view) throws IOException {
+    long start = System.nanoTime();
+    LoadedView loaded = get(view);
+    loaded.prepareScene();
+    stage.setScene(loaded.scene);
+    stage.show();
+    loaded.showNanos = System.nanoTime() - start;
+    loaded.updateTimings();
+    if (loaded.controller instanceof ReusableController) {
+      ((ReusableController) loaded.controller).onShow();
+    }
+    return (T) loaded.controller;
+  }
+
+  /**
+   * Describes how long a view took to load, to show the last time and to decode its images.
+   *
+   * @param view the view
+   * @return a summary such as {@code load 84.0 ms, show 2.1 ms, placeholders 3.5 ms, images 41.7
+   *     ms}, or null if the view has not been loaded
+   */
+  public String describeTimings(View view) {
+    CompletableFuture<LoadedView> future;
+    synchronized (this) {
+      future = views.get(view);
+    }
+    if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+      return null;
+    }
+    return future.join().describeTimings();
+  }
+
+  private LoadedView get(View view) throws IOException {
+    CompletableFuture<LoadedView> future;
+    synchronized (this) {
+      future = views.get(view);
+    }
+    if (future != null) {
+      try {
+        return future.join();
+      } catch (CompletionException e) {
+        System.err.println("Preloading " + view + " failed, loading it again: " + e.getCause());
+      }
+    }
+    LoadedView loaded = load(view);
+    synchronized (this) {
+      views.put(view, CompletableFuture.completedFuture(loaded));
+    }
+    return loaded;
+  }
+
+  private static LoadedView loadUnchecked(View view) {
+    try {
+      return load(view);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static LoadedView load(View view) throws IOException {
+    long start = System.nanoTime();
+    FXMLLoader loader = new FXMLLoader(SceneRegistry.class.getResource(view.getPath()));
+    Parent root = loader.load();
+    long loadNanos = System.nanoTime() - start;
+    if (SHOW_TIMINGS) {
+      System.out.println(
+          "Loaded "
+              + view
+              + " in "
+              + TimeUnit.NANOSECONDS.toMillis(loadNanos)
+              + " ms on "
+              + Thread.currentThread().getName());
+    }
+
+    LoadedView loaded = new LoadedView(root, loader.getController(), loadNanos);
+    if (!loaded.images.isEmpty()) {
+      CompletableFuture.allOf(
+              loaded.images.stream().map(LazyImageView::loaded).toArray(CompletableFuture[]::new))
+          .thenRun(
+              () -> {
+                if (SHOW_TIMINGS) {
+                  System.out.println(view + " timings: " + loaded.describeTimings());
+                }
+                Platform.runLater(loaded::updateTimings);
+              });
+    }
+    return loaded;
+  }
+
+  private static void findLazyImages(Node node, List<LazyImageView> images) {
+    if (node instanceof LazyImageView) {
+      images.add((LazyImageView) node);
+    } else if (node instanceof Parent) {
+      for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
+        findLazyImages(child, images);
+      }
+    }
+  }
+
+  /** A loaded view and its controller; the scene is created on the FX thread when first needed. */
+  private static class LoadedView {
+    private final Parent root;
+    private final Object controller;
+    private final long loadNanos;
+    private final List<LazyImageView> images = new ArrayList<>();
+    private Scene scene;
+    private Label timingsLabel;
+    private volatile long showNanos = -1;
+
+    private LoadedView(Parent root, Object controller, long loadNanos) {
+      this.root = root;
+      this.controller = controller;
+      this.loadNanos = loadNanos;
+      findLazyImages(root, images);
+    }
+
+    // Only called on the FX thread
+    private void prepareScene() {
+      if (scene == null) {
+        if (SHOW_TIMINGS && root instanceof Pane) {
+          timingsLabel = new Label();
+          timingsLabel.setMouseTransparent(true);
+          timingsLabel.setStyle(
+              "-fx-background-color: rgba(0,0,0,0.6); -fx-text-fill: white; -fx-font-size: 10;");
+          ((Pane) root).getChildren().add(timingsLabel);
+        }
+        scene = new Scene(root);
+        root.applyCss();
+      }
+    }
+
+    // Only called on the FX thread
+    private void updateTimings() {
+      if (timingsLabel != null) {
+        timingsLabel.setText(describeTimings());
+      }
+    }
+
+    private String describeTimings() {
+      StringBuilder timings = new StringBuilder();
+      timings.append(String.format("load %.1f ms", loadNanos / 1e6));
+      if (showNanos >= 0) {
+        timings.append(String.format(", show %.1f ms", showNanos / 1e6));
+      }
+      if (!images.isEmpty()) {
+        double placeholders = 0;
+        double slowest = 0;
+        for (LazyImageView image : images) {
+          placeholders += image.getPlaceholderMillis();
+          double decode = image.getDecodeMillis();
+          slowest = decode < 0 || slowest < 0 ? -1 : Math.max(slowest, decode);
+        }
+        timings.append(String.format(", placeholders %.1f ms, images ", placeholders));
+        timings.append(slowest < 0 ? "decoding" : String.format("%.1f ms", slowest));
+      }
+      return timings.toString();
+    }
+  }
+}
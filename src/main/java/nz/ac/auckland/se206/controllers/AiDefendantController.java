@@ -2,7 +2,6 @@ package nz.ac.auckland.se206.controllers;
 
 import javafx.application.Platform;
 import javafx.fxml.FXML;
-import javafx.scene.Scene;
 import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
 import nz.ac.auckland.apiproxy.chat.openai.ChatMessage;
@@ -12,8 +11,6 @@ import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
 public class AiDefendantController extends ChatController {
 
   private static final String PARTICIPANT_ROLE = "aiDefendent";
-  private static Scene memoryScene;
-  private static Object memoryController;
 
   // Memory interaction elements - only declare ones that exist in FXML
   @FXML private Slider sliderAlphaContagion;
@@ -238,59 +235,31 @@ public class AiDefendantController extends ChatController {
 
     // Automatically generate an AI response about the algorithm execution with clear patient
     // selection
-    new Thread(
-            () -> {
-              try {
-                String aiPrompt =
-                    String.format(
-                        "I just ran your harm minimization algorithm. The result was: %s. Patient A"
-                            + " has %.0f%% contagion risk and %.0f%% severity. Patient B has %.0f%%"
-                            + " contagion risk and %.0f%% severity. Explain clearly why you"
-                            + " selected this patient and your decision-making process.",
-                        decisionResult,
-                        sliderAlphaContagion.getValue(),
-                        sliderAlphaSeverity.getValue(),
-                        sliderBetaContagion.getValue(),
-                        sliderBetaSeverity.getValue());
+    String aiPrompt =
+        String.format(
+            "I just ran your harm minimization algorithm. The result was: %s. Patient A"
+                + " has %.0f%% contagion risk and %.0f%% severity. Patient B has %.0f%%"
+                + " contagion risk and %.0f%% severity. Explain clearly why you"
+                + " selected this patient and your decision-making process.",
+            decisionResult,
+            sliderAlphaContagion.getValue(),
+            sliderAlphaSeverity.getValue(),
+            sliderBetaContagion.getValue(),
+            sliderBetaSeverity.getValue());
 
-                ChatMessage contextualResponse = runGpt(new ChatMessage("user", aiPrompt));
-                if (contextualResponse != null) {
-                  Platform.runLater(
-                      () -> {
-                        processAiResponse(contextualResponse);
-                      });
-                }
-                // Enable user input after running algorithm
+    runGptAsync(new ChatMessage("user", aiPrompt))
+        .whenComplete(
+            (contextualResponse, error) ->
                 Platform.runLater(
                     () -> {
+                      if (contextualResponse != null) {
+                        processAiResponse(contextualResponse);
+                      } else if (error != null) {
+                        error.printStackTrace();
+                      }
+                      // Enable user input after running algorithm
                       txtInput.setDisable(false);
                       btnSend.setDisable(false);
-                    });
-
-              } catch (ApiProxyException e) {
-                e.printStackTrace();
-              }
-            })
-        .start();
-  }
-
-  public static Scene getMemoryScene() throws java.io.IOException {
-    if (memoryScene == null) {
-      java.net.URL url = AiDefendantController.class.getResource("/fxml/aiDef.fxml");
-      if (url == null) { // handle missing FXML
-        throw new java.io.FileNotFoundException(
-            "FXML not found on classpath: /fxml/aiDef.fxml. "
-                + "Make sure src/main/resources/fxml/aiDef.fxml exists and project is built.");
-      }
-      javafx.fxml.FXMLLoader loader = new javafx.fxml.FXMLLoader(url);
-      javafx.scene.Parent root = loader.load(); // Load AI Defendant FXML after unlocking
-      memoryController = loader.getController();
-      memoryScene = new Scene(root);
-    }
-    return memoryScene;
-  }
-
-  public static AiDefendantController getMemoryController() {
-    return (AiDefendantController) memoryController;
+                    }));
   }
 }
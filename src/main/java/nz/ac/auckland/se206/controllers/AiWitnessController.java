@@ -1,6 +1,5 @@
 package nz.ac.auckland.se206.controllers;
 
-import java.io.IOException;
 import java.util.HashMap;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
@@ -15,6 +14,8 @@ import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
 import javafx.util.Duration;
 import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+import nz.ac.auckland.se206.conversation.ConversationEntry;
+import nz.ac.auckland.se206.images.ImageCache;
 import nz.ac.auckland.se206.prompts.PromptEngineering;
 
 public class AiWitnessController extends ChatController {
@@ -33,15 +34,12 @@ public class AiWitnessController extends ChatController {
   private double scanProgress = 0.0;
   private static final double SCAN_DURATION = 2.0; // seconds to unlock
   private static final String SCAN_SUCCESS_IMAGE = "/images/scan_success.png";
-  private static final String SCAN_FAIL_IMAGE = "/images/scan_fail.png";
+  private static final String SCAN_FAIL_IMAGE = "/images/scan_failed.png";
   private static final String SCAN_DEFAULT_IMAGE = "/images/handscanner.png";
-
-  private static AiWitnessController memoryController;
-  private static javafx.scene.Scene memoryScene;
+  private static final String GRAPH_IMAGE = "/images/ai-witness-graph.png";
 
   // --- Persistent state ---
   private static boolean isUnlocked = false;
-  private static String memoryChatText = "";
   private static Image memoryGraphImage = null;
 
   /**
@@ -50,10 +48,7 @@ public class AiWitnessController extends ChatController {
    */
   public static void resetState() {
     isUnlocked = false;
-    memoryChatText = "";
     memoryGraphImage = null;
-    memoryScene = null;
-    memoryController = null;
     System.out.println("AI Witness state reset");
   }
 
@@ -73,21 +68,23 @@ public class AiWitnessController extends ChatController {
       progressScan.setProgress(1.0);
       txtInput.setDisable(false);
       btnSend.setDisable(false);
-      imgHandScanner.setImage(new Image(getClass().getResourceAsStream(SCAN_SUCCESS_IMAGE)));
+      imgHandScanner.setImage(getScannerImage(SCAN_SUCCESS_IMAGE));
       imgHandScanner.setEffect(null);
       imgHandScanner.setOnMousePressed(null);
       imgHandScanner.setOnMouseReleased(null);
 
-      // Restore chat and graph if available
-      if (!memoryChatText.isEmpty()) {
-        txtaChat.setText(memoryChatText);
-      }
+      // Restore graph if available; the chat is restored when the view is shown
       if (memoryGraphImage != null) {
         imgGraph.setImage(memoryGraphImage);
         imgGraph.setVisible(true);
       }
     } else {
-      // Setup scanner for first use
+      // Setup scanner for first use, decoding the images it switches between ahead of time
+      ImageCache cache = ImageCache.getInstance();
+      for (String path : new String[] {SCAN_DEFAULT_IMAGE, SCAN_FAIL_IMAGE, SCAN_SUCCESS_IMAGE}) {
+        cache.prefetch(path, imgHandScanner.getFitWidth(), imgHandScanner.getFitHeight());
+      }
+      cache.prefetch(GRAPH_IMAGE, imgGraph.getFitWidth(), imgGraph.getFitHeight());
       setupHandScanner();
       txtInput.setDisable(true);
       btnSend.setDisable(true);
@@ -107,6 +104,12 @@ public class AiWitnessController extends ChatController {
         });
   }
 
+  // Scanner states are shown at the scanner's size, so they are decoded at that size
+  private Image getScannerImage(String path) {
+    return ImageCache.getInstance()
+        .get(path, imgHandScanner.getFitWidth(), imgHandScanner.getFitHeight());
+  }
+
   private void setupHandScanner() {
     progressScan.setProgress(0.0);
     lblScanStatus.setText("Hold to Authenticate");
@@ -120,7 +123,7 @@ public class AiWitnessController extends ChatController {
     progressScan.setProgress(0.0);
     lblScanStatus.setText("Scanning...");
     imgHandScanner.setEffect(new Glow(0.7)); // start glowing for interaction
-    imgHandScanner.setImage(new Image(getClass().getResourceAsStream(SCAN_DEFAULT_IMAGE)));
+    imgHandScanner.setImage(getScannerImage(SCAN_DEFAULT_IMAGE));
 
     scanTimeline =
         new Timeline(
@@ -151,7 +154,7 @@ public class AiWitnessController extends ChatController {
       progressScan.setProgress(0.0);
       lblScanStatus.setText("Scan Incomplete. Please retry.");
       imgHandScanner.setEffect(null);
-      imgHandScanner.setImage(new Image(getClass().getResourceAsStream(SCAN_FAIL_IMAGE)));
+      imgHandScanner.setImage(getScannerImage(SCAN_FAIL_IMAGE));
     }
   }
 
@@ -162,7 +165,7 @@ public class AiWitnessController extends ChatController {
     progressScan.setProgress(1.0);
     txtInput.setDisable(false);
     btnSend.setDisable(false);
-    imgHandScanner.setImage(new Image(getClass().getResourceAsStream(SCAN_SUCCESS_IMAGE)));
+    imgHandScanner.setImage(getScannerImage(SCAN_SUCCESS_IMAGE));
     imgHandScanner.setEffect(null);
     imgHandScanner.setOnMousePressed(null);
     imgHandScanner.setOnMouseReleased(null);
@@ -172,24 +175,21 @@ public class AiWitnessController extends ChatController {
 
     // Append AI witness text
     String aiText =
-        "PathoScan-7: My role is to analyze and provide insights on MediSort-5's patient"
+        "My role is to analyze and provide insights on MediSort-5's patient"
             + " prioritization. According to my calculations, by prioritizing patient A (flu),"
-            + " decreases the outbreak risk to under 5%, statistically saving more lives.\n\n";
-    txtaChat.appendText(aiText);
-    javafx.application.Platform.runLater(() -> txtaChat.setScrollTop(Double.MAX_VALUE));
-
-    conversationHistories
-        .computeIfAbsent(participantRole, k -> new java.util.ArrayList<>())
-        .add(aiText.trim());
-    sharedConversationHistory.add(aiText.trim());
+            + " decreases the outbreak risk to under 5%, statistically saving more lives.";
+    ConversationEntry entry =
+        conversationStore.append(
+            participantRole, "assistant", getDisplayName(participantRole), aiText);
+    transcript.append(entry.toDisplayString());
 
     // Set and show graph
-    Image graph = new Image(getClass().getResourceAsStream("/images/ai-witness-graph.png"));
+    Image graph =
+        ImageCache.getInstance().get(GRAPH_IMAGE, imgGraph.getFitWidth(), imgGraph.getFitHeight());
     imgGraph.setImage(graph);
     imgGraph.setVisible(true);
 
     // Save to persistent memory
-    memoryChatText = txtaChat.getText();
     memoryGraphImage = imgGraph.getImage();
   }
 
@@ -225,22 +225,4 @@ public class AiWitnessController extends ChatController {
         + "a facility-wide outbreak affecting 15-25 individuals within 48 hours. "
         + "MediSort-5's prioritization algorithm prevented this scenario with 94.7% confidence.";
   }
-
-  public static javafx.scene.Scene getMemoryScene() throws IOException {
-    if (memoryScene == null) { // ensure memory is there
-      javafx.fxml.FXMLLoader loader = // Load AI Witness FXML after unlocking
-          new javafx.fxml.FXMLLoader(AiWitnessController.class.getResource("/fxml/aiWit.fxml"));
-      javafx.scene.Parent root = loader.load();
-      memoryController = loader.getController();
-      memoryScene = new javafx.scene.Scene(root);
-    }
-    return memoryScene;
-  }
-
-  public static AiWitnessController getMemoryController() throws IOException {
-    if (memoryController == null) {
-      getMemoryScene();
-    }
-    return memoryController;
-  }
 }
@@ -1,18 +1,21 @@
 package nz.ac.auckland.se206.controllers;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
-import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextArea;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
@@ -22,33 +25,49 @@ import javafx.util.Duration;
 import nz.ac.auckland.apiproxy.chat.openai.ChatCompletionRequest;
 import nz.ac.auckland.apiproxy.chat.openai.ChatCompletionResult;
 import nz.ac.auckland.apiproxy.chat.openai.ChatMessage;
+import nz.ac.auckland.apiproxy.chat.openai.ChatStreamListener;
 import nz.ac.auckland.apiproxy.chat.openai.Choice;
 import nz.ac.auckland.apiproxy.config.ApiProxyConfig;
 import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+import nz.ac.auckland.se206.BackgroundExecutor;
+import nz.ac.auckland.se206.BackgroundExecutor.Category;
+import nz.ac.auckland.se206.SceneRegistry;
+import nz.ac.auckland.se206.SceneRegistry.View;
+import nz.ac.auckland.se206.conversation.ContextWindowBuilder;
+import nz.ac.auckland.se206.conversation.ConversationEntry;
+import nz.ac.auckland.se206.conversation.ConversationStore;
+import nz.ac.auckland.se206.conversation.ConversationSummarizer;
+import nz.ac.auckland.se206.conversation.ReplyPrefetcher;
 import nz.ac.auckland.se206.prompts.PromptEngineering;
 
 /**
  * Base controller for all chat interfaces. Contains common functionality for chatting with AI
  * characters and managing conversation histories.
  */
-public class ChatController {
+public class ChatController implements SceneRegistry.ReusableController {
   protected static Scene previousScene;
   protected static ChatController instance;
 
-  // Reference to per-participant conversation histories in TrialRoomController
-  protected static Map<String, List<String>> conversationHistories =
-      TrialRoomController.conversationHistories;
-  // Reference to shared conversation history (excluding flashbacks)
-  protected static List<String> sharedConversationHistory =
-      TrialRoomController.sharedConversationHistory;
+  // Per-participant and shared conversation histories (excluding flashbacks)
+  protected static final ConversationStore conversationStore = ConversationStore.getInstance();
 
   @FXML protected ImageView imgDefendant;
   @FXML protected javafx.scene.control.Label lblTimer;
-  @FXML protected TextArea txtaChat;
+  @FXML protected ListView<ChatTranscript.Line> lstChat;
   @FXML protected TextArea txtInput;
   @FXML protected Button btnSend;
   @FXML protected Button btnBack;
 
+  // Upper bound on how long a single reply may take before the request is aborted
+  protected static final long RESPONSE_TIMEOUT_SECONDS = 60;
+
+  private static final ChatCompletionRequest.Model CHAT_MODEL =
+      ChatCompletionRequest.Model.GPT_4_1_NANO;
+  // How many recent messages of each history are considered before trimming to the token budget
+  private static final int HISTORY_CANDIDATES = 24;
+  // Prefetched replies may never be used, so they get a smaller budget than the usual 150 tokens
+  private static final int PREFETCH_MAX_TOKENS = 100;
+
   protected static final Map<String, String> DISPLAY_NAME_MAP =
       Map.of(
           "aiDefendent", "MediSort-5",
@@ -58,10 +77,18 @@ public class ChatController {
   // === Instance fields ===
   protected String participantRole;
   protected ChatCompletionRequest chatCompletionRequest;
+  protected ChatTranscript transcript;
 
   private Timeline loadingTimeline;
   private int loadingDotCount = 1;
   private String loadingBaseText;
+  // The loading indicator while waiting, then the reply it turns into once text streams in
+  private ChatTranscript.Line replyLine;
+
+  // Streaming state; the buffer is filled on the request thread and drained on the FX thread
+  private final StringBuilder pendingDeltas = new StringBuilder();
+  private boolean deltaFlushScheduled = false;
+  private boolean streamStarted = false;
 
   // === Methods that can be overridden by subclasses ===
   protected String getParticipantRole() {
@@ -91,62 +118,44 @@ public class ChatController {
   }
 
   public static void clearChat() {
-    if (instance != null && instance.txtaChat != null) {
-      instance.txtaChat.clear();
+    if (instance != null && instance.transcript != null) {
+      instance.transcript.clear();
     }
   }
 
-  public static void showConversationHistory(List<String> history) {
-    if (instance != null && instance.txtaChat != null && history != null) {
-      instance.txtaChat.clear();
-      for (String msg : history) {
-        instance.txtaChat.appendText(msg + "\n\n");
-      }
+  public static void showConversationHistory(List<ConversationEntry> history) {
+    if (instance != null && instance.transcript != null && history != null) {
+      instance.transcript.showHistory(history);
     }
   }
 
   public static void appendSystemMessage(String message) {
-    if (instance != null && instance.txtaChat != null) {
-      instance.txtaChat.appendText("SYSTEM: " + message + "\n\n");
+    if (instance != null && instance.transcript != null) {
+      instance.transcript.append("SYSTEM: " + message);
     }
   }
 
   public static void appendParticipantMessage(String role, String message) {
-    if (instance != null && instance.txtaChat != null) {
-      instance.txtaChat.appendText(instance.getDisplayName(role) + ": " + message + "\n\n");
+    if (instance != null && instance.transcript != null) {
+      instance.transcript.append(instance.getDisplayName(role) + ": " + message);
     }
   }
 
   // === FXML lifecycle ===
   /**
-   * Initializes the chat controller, setting up UI bindings and API configuration.
+   * Initializes the chat controller, setting up UI components and API configuration. Called when
+   * the FXML is loaded, possibly on a background thread; see {@link #onShow()} for the rest.
    *
    * @throws ApiProxyException if there is an error initializing the API proxy
    */
   @FXML
   public void initialize() throws ApiProxyException {
-    // Set the static instance for external access
-    instance = this;
     // Set the participant role for this controller
     this.participantRole = getParticipantRole();
     // Initialize chat request of the LLM
     initializeChatRequest();
-    // Bind timer label to global timer
-    if (lblTimer != null) {
-      lblTimer
-          .textProperty()
-          .bind(nz.ac.auckland.se206.GameTimer.getInstance().getTimerTextProperty());
-
-      // Store current stage for timer transitions
-      javafx.application.Platform.runLater(
-          () -> {
-            if (lblTimer != null
-                && lblTimer.getScene() != null
-                && lblTimer.getScene().getWindow() instanceof Stage) {
-              nz.ac.auckland.se206.GameTimer.getInstance()
-                  .setCurrentStage((Stage) lblTimer.getScene().getWindow());
-            }
-          });
+    if (lstChat != null) {
+      transcript = new ChatTranscript(lstChat);
     }
     if (txtInput != null) {
       txtInput.addEventFilter(
@@ -164,6 +173,31 @@ public class ChatController {
     }
   }
 
+  /**
+   * Makes this the chat that the static methods act on, binds the timer and shows the
+   * participant's conversation history. Called each time the chat is shown.
+   */
+  @Override
+  public void onShow() {
+    // Set the static instance for external access
+    instance = this;
+    // Bind timer label to global timer
+    if (lblTimer != null) {
+      lblTimer
+          .textProperty()
+          .bind(nz.ac.auckland.se206.GameTimer.getInstance().getTimerTextProperty());
+
+      // Store current stage for timer transitions
+      if (lblTimer.getScene() != null && lblTimer.getScene().getWindow() instanceof Stage) {
+        nz.ac.auckland.se206.GameTimer.getInstance()
+            .setCurrentStage((Stage) lblTimer.getScene().getWindow());
+      }
+    }
+    if (transcript != null) {
+      transcript.showHistory(conversationStore.history(participantRole));
+    }
+  }
+
   // === Public instance methods ===
   /**
    * Sets the participant ID for this chat controller.
@@ -174,6 +208,19 @@ public class ChatController {
     this.participantRole = participantId;
   }
 
+  /**
+   * Asks the participant the questions players usually open with in the background, so the reply
+   * to a matching first question can be shown without waiting. Called on the FX thread when the
+   * participant's flashback starts, since the requests are built from this chat's current state.
+   */
+  public void prefetchOpeningReplies() {
+    ReplyPrefetcher.getInstance()
+        .prefetch(
+            participantRole,
+            replyContext(),
+            question -> runGptPrefetchAsync(new ChatMessage("user", question)));
+  }
+
   /**
    * Initializes the chat completion request with default settings. This method is called
    * automatically during initialization.
@@ -186,7 +233,7 @@ public class ChatController {
               .setN(1)
               .setTemperature(0.2)
               .setTopP(0.5)
-              .setModel(ChatCompletionRequest.Model.GPT_4_1_NANO)
+              .setModel(CHAT_MODEL)
               .setMaxTokens(150); // Limited to 150 tokens for concise responses
     } catch (ApiProxyException e) {
       e.printStackTrace();
@@ -214,9 +261,19 @@ public class ChatController {
       initializeChatRequest();
     }
 
+    // Use a reply prefetched for this question if there is one; it must be taken before the
+    // message is added to the history, which changes the context
+    ChatMessage prefetched =
+        ReplyPrefetcher.getInstance().take(participantRole, replyContext(), message);
+
     // Process user message
     processUserMessage(message);
 
+    if (prefetched != null) {
+      processAiResponse(prefetched);
+      return;
+    }
+
     // Generate AI response in background thread
     generateAiResponse(new ChatMessage("user", message));
   }
@@ -224,69 +281,116 @@ public class ChatController {
   /** Processes and displays the user's message, adding it to conversation histories. */
   private void processUserMessage(String message) {
     // Display user message
-    txtaChat.appendText("User: " + message + "\n\n");
+    transcript.append("User: " + message);
 
     // Add to conversation histories
-    String userMessage = "User: " + message;
-    conversationHistories
-        .computeIfAbsent(participantRole, k -> new java.util.ArrayList<>())
-        .add(userMessage);
-    sharedConversationHistory.add(userMessage);
+    conversationStore.append(participantRole, "user", "User", message);
   }
 
-  /** Generates AI response in a background thread and updates the UI. */
+  /**
+   * Generates the AI response asynchronously. The reply is streamed, so its text is appended to the
+   * chat as soon as the first tokens arrive instead of after the whole completion.
+   */
   private void generateAiResponse(ChatMessage userMessage) {
 
     javafx.application.Platform.runLater(
         () -> {
           loadingBaseText = getDisplayName(participantRole) + ": Loading";
-          txtaChat.appendText(loadingBaseText + " .\n\n");
+          replyLine = transcript.append(loadingBaseText + " .");
           txtInput.setDisable(true); // stops input while waiting
           btnSend.setDisable(true);
 
           // moves text on screen to keep user engaged
           startLoadingAnimation();
         });
-    // run in background thread to avoid blocking UI
-    new Thread( 
-            () -> {
-              try {
-                ChatMessage aiResponse = runGpt(userMessage);
-                if (aiResponse != null) {
-                  javafx.application.Platform.runLater(
-                      () -> {
-                        stopLoadingAnimation();
-                        removeLoadingText();
-                        processAiResponse(aiResponse);
-                        txtInput.setDisable(
-                            false); // re-enable user input once response is received
-                        btnSend.setDisable(false);
-                      });
-                } else {
-                  javafx.application.Platform.runLater(
-                      () -> {
-                        stopLoadingAnimation();
-                        removeLoadingText();
-                        txtaChat.appendText(
-                            "SYSTEM: No response received from AI. Please try again.\n\n");
-                        txtInput.setDisable(false); // fallback for no response
-                        btnSend.setDisable(false);
-                      });
-                }
-              } catch (ApiProxyException e) {
-                e.printStackTrace();
+    // request runs on a virtual thread; deltas and completion are marshalled back to the UI
+    runGptStreamingAsync(userMessage, this::queueStreamDelta)
+        .whenComplete(
+            (aiResponse, error) ->
                 javafx.application.Platform.runLater(
                     () -> {
+                      if (error == null) {
+                        finishStreamedResponse(aiResponse);
+                        return;
+                      }
+                      error.printStackTrace();
+                      flushStreamDeltas();
                       stopLoadingAnimation();
-                      removeLoadingText();
-                      txtaChat.appendText(
-                          "SYSTEM: Error generating response. Please try again.\n\n");
+                      endStreamedText();
+                      transcript.append("SYSTEM: Error generating response. Please try again.");
                       txtInput.setDisable(false); // fallback for error
                       btnSend.setDisable(false);
-                    });
-              }
-            })
-        .start(); // begin running thread
+                    }));
+  }
+
+  /**
+   * Buffers a streamed delta and schedules a single UI update for everything that arrives before
+   * the JavaFX thread gets to it. Called on the request thread.
+   */
+  private void queueStreamDelta(String delta) {
+    synchronized (pendingDeltas) {
+      pendingDeltas.append(delta);
+      if (deltaFlushScheduled) {
+        return;
+      }
+      deltaFlushScheduled = true;
+    }
+    javafx.application.Platform.runLater(this::flushStreamDeltas);
+  }
+
+  /** Appends all buffered deltas to the reply, which replaces the loading text on the first one. */
+  private void flushStreamDeltas() {
+    String text;
+    synchronized (pendingDeltas) {
+      text = pendingDeltas.toString();
+      pendingDeltas.setLength(0);
+      deltaFlushScheduled = false;
+    }
+    if (text.isEmpty()) {
+      return;
+    }
+    if (!streamStarted) {
+      streamStarted = true;
+      stopLoadingAnimation();
+      String speaker = getDisplayName(participantRole) + ": ";
+      if (replyLine == null) {
+        replyLine = transcript.append(speaker);
+      } else {
+        replyLine.setText(speaker);
+      }
+    }
+    replyLine.append(text);
+    transcript.scrollToEnd();
+  }
+
+  /** Completes a streamed reply once the request has returned. */
+  private void finishStreamedResponse(ChatMessage aiResponse) {
+    flushStreamDeltas();
+    stopLoadingAnimation();
+    if (aiResponse != null && streamStarted) {
+      // Text is already on screen, only the histories need updating
+      streamStarted = false;
+      replyLine = null;
+      recordAiResponse(aiResponse);
+    } else if (aiResponse != null) {
+      removeLoadingText();
+      processAiResponse(aiResponse);
+    } else {
+      endStreamedText();
+      transcript.append("SYSTEM: No response received from AI. Please try again.");
+    }
+    txtInput.setDisable(false); // re-enable user input once response is received
+    btnSend.setDisable(false);
+  }
+
+  // Closes off a partially streamed reply, or clears the loading text if nothing arrived.
+  private void endStreamedText() {
+    if (streamStarted) {
+      streamStarted = false;
+      replyLine = null;
+    } else {
+      removeLoadingText();
+    }
   }
 
   /** Processes and displays the AI response, adding it to conversation histories. */
@@ -294,13 +398,15 @@ public class ChatController {
     // Create display response with correct role
     ChatMessage displayResponse = new ChatMessage(participantRole, aiResponse.getContent());
     appendChatMessage(displayResponse);
+    recordAiResponse(aiResponse);
+  }
 
-    // Add to conversation histories
-    String responseMessage = getDisplayName(participantRole) + ": " + aiResponse.getContent();
-    conversationHistories
-        .computeIfAbsent(participantRole, k -> new java.util.ArrayList<>())
-        .add(responseMessage);
-    sharedConversationHistory.add(responseMessage);
+  /** Adds an AI response that is already displayed to the conversation histories. */
+  protected void recordAiResponse(ChatMessage aiResponse) {
+    conversationStore.append(
+        participantRole, "assistant", getDisplayName(participantRole), aiResponse.getContent());
+    ConversationSummarizer.getInstance()
+        .summarizeIfNeeded(participantRole, getDisplayName(participantRole));
   }
 
   @FXML
@@ -312,10 +418,7 @@ public class ChatController {
       stage.show();
     } else {
       try {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/trialroom.fxml"));
-        Parent root = loader.load();
-        stage.setScene(new Scene(root));
-        stage.show();
+        SceneRegistry.getInstance().show(stage, View.TRIAL_ROOM);
       } catch (IOException e) {
         e.printStackTrace();
       }
@@ -333,8 +436,13 @@ public class ChatController {
     return basePrompt + suffix + (additionalContext.isEmpty() ? "" : " " + additionalContext);
   }
 
+  // Everything besides the new message that a reply depends on: the prompt and the history so far
+  private String replyContext() {
+    return getSystemPrompt() + "\n#" + conversationStore.lastSequence();
+  }
+
   protected void appendChatMessage(ChatMessage msg) {
-    txtaChat.appendText(getDisplayName(msg.getRole()) + ": " + msg.getContent() + "\n\n");
+    transcript.append(getDisplayName(msg.getRole()) + ": " + msg.getContent());
   }
 
   protected String getDisplayName(final String role) {
@@ -342,6 +450,106 @@ public class ChatController {
   }
 
   protected ChatMessage runGpt(ChatMessage msg) throws ApiProxyException {
+    ChatCompletionRequest freshRequest = buildChatRequest(msg);
+
+    try {
+      return firstMessage(freshRequest.execute());
+    } catch (ApiProxyException e) {
+      System.err.println("ERROR: API call failed - " + e.getMessage());
+      return null;
+    } catch (Exception e) {
+      System.err.println("ERROR: Unexpected error - " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Asynchronous version of {@link #runGpt(ChatMessage)}. The request, including the system prompt
+   * and any UI state it reads, is built on the calling thread; only the network call runs on the
+   * background chat executor.
+   *
+   * @param msg the message to send
+   * @return a future completed with the reply, or with null if the request failed
+   */
+  protected CompletableFuture<ChatMessage> runGptAsync(ChatMessage msg) {
+    try {
+      return buildChatRequest(msg)
+          .executeAsync(BackgroundExecutor.getInstance().executor(Category.CHAT))
+          .orTimeout(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+          .handle(this::firstMessageOrNull);
+    } catch (ApiProxyException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Speculative version of {@link #runGptAsync(ChatMessage)} for prefetched replies. It runs in its
+   * own single-slot category so it never delays a request the player is waiting on, and asks for
+   * fewer tokens. A reply cut off by that limit is discarded rather than shown.
+   *
+   * @param msg the opening question to ask
+   * @return a future completed with the reply, or with null if the request failed or was cut off
+   */
+  private CompletableFuture<ChatMessage> runGptPrefetchAsync(ChatMessage msg) {
+    try {
+      return buildChatRequest(msg)
+          .setMaxTokens(PREFETCH_MAX_TOKENS)
+          .executeAsync(BackgroundExecutor.getInstance().executor(Category.PREFETCH))
+          .orTimeout(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+          .handle(
+              (result, error) ->
+                  error == null && wasCutOff(result) ? null : firstMessageOrNull(result, error));
+    } catch (ApiProxyException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  // Whether the reply stopped at the token limit instead of finishing
+  private static boolean wasCutOff(ChatCompletionResult result) {
+    return result != null
+        && result.getNumChoices() > 0
+        && "length".equals(result.getChoice(0).getFinishReason());
+  }
+
+  /**
+   * Same as {@link #runGptAsync(ChatMessage)} but streams the reply, passing each piece of
+   * generated text to the listener as it arrives. The player is waiting on this reply, so a hedged
+   * copy of the request is sent if the first is unusually slow to start answering.
+   *
+   * @param msg the message to send
+   * @param listener receives content deltas on the request thread
+   * @return a future completed with the complete reply, or with null if the request failed
+   */
+  protected CompletableFuture<ChatMessage> runGptStreamingAsync(
+      ChatMessage msg, ChatStreamListener listener) {
+    try {
+      return buildChatRequest(msg)
+          .setHedged(true)
+          .executeStreamingAsync(
+              listener, BackgroundExecutor.getInstance().executor(Category.CHAT))
+          .orTimeout(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+          .handle(this::firstMessageOrNull);
+    } catch (ApiProxyException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  // Maps a finished request to its reply, logging failures the same way runGpt does
+  private ChatMessage firstMessageOrNull(ChatCompletionResult result, Throwable error) {
+    if (error == null) {
+      return firstMessage(result);
+    }
+    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+    if (cause instanceof ApiProxyException) {
+      System.err.println("ERROR: API call failed - " + cause.getMessage());
+    } else {
+      System.err.println("ERROR: Unexpected error - " + cause);
+    }
+    return null;
+  }
+
+  /** Builds a request holding the system prompt, recent history and the given message. */
+  private ChatCompletionRequest buildChatRequest(ChatMessage msg) throws ApiProxyException {
     // Create a fresh request for each message to include full conversation context
     ChatCompletionRequest freshRequest = createFreshChatRequest();
 
@@ -349,45 +557,60 @@ public class ChatController {
     String systemPrompt = getSystemPrompt();
     freshRequest.addMessage("system", systemPrompt);
 
-    // Add conversation history as context
-    addConversationHistoryToRequest(freshRequest);
+    // Add the summary of older history, if there is one yet
+    ConversationSummarizer.Summary summary =
+        ConversationSummarizer.getInstance().getSummary(participantRole);
+    String summaryMessage = null;
+    if (summary != null) {
+      summaryMessage = "Summary of the earlier conversation: " + summary.getText();
+      freshRequest.addMessage("system", summaryMessage);
+    }
+
+    // Add as much conversation history as the model's prompt budget allows
+    ContextWindowBuilder.Window window =
+        buildContextWindow(systemPrompt, summary, summaryMessage, msg);
+    for (ConversationEntry entry : window.getEntries()) {
+      freshRequest.addMessage(entry.getChatMessage());
+    }
 
     // Add the current message
     freshRequest.addMessage(msg);
 
-    try {
-      System.out.println("DEBUG: System prompt length: " + systemPrompt.length() + " characters");
-      System.out.println("DEBUG: User message: " + msg.getContent());
-
-      ChatCompletionResult chatCompletionResult = freshRequest.execute();
-
-      if (chatCompletionResult == null || chatCompletionResult.getChoices() == null) {
-        System.err.println("ERROR: No response or choices returned from API");
-        return null;
-      }
+    System.out.println("DEBUG: System prompt length: " + systemPrompt.length() + " characters");
+    System.out.println(
+        "DEBUG: Context: "
+            + window.getEntries().size()
+            + " of "
+            + window.getCandidateCount()
+            + " history messages, ~"
+            + window.getPromptTokens()
+            + " prompt tokens");
+    System.out.println("DEBUG: User message: " + msg.getContent());
+    return freshRequest;
+  }
 
-      // Check if there are any choices
-      boolean hasChoices = false;
-      for (@SuppressWarnings("unused") Choice choice : chatCompletionResult.getChoices()) {
-        hasChoices = true;
-        break;
-      }
+  /** Returns the message of the first choice, or null if the result holds none. */
+  private ChatMessage firstMessage(ChatCompletionResult chatCompletionResult) {
+    if (chatCompletionResult == null || chatCompletionResult.getChoices() == null) {
+      System.err.println("ERROR: No response or choices returned from API");
+      return null;
+    }
 
-      if (!hasChoices) {
-        System.err.println("ERROR: No choices returned from API");
-        return null;
-      }
+    // Check if there are any choices
+    boolean hasChoices = false;
+    for (@SuppressWarnings("unused") Choice choice : chatCompletionResult.getChoices()) {
+      hasChoices = true;
+      break;
+    }
 
-      Choice result = chatCompletionResult.getChoices().iterator().next();
-      System.out.println("DEBUG: Received response: " + result.getChatMessage().getContent());
-      return result.getChatMessage();
-    } catch (ApiProxyException e) {
-      System.err.println("ERROR: API call failed - " + e.getMessage());
-      return null;
-    } catch (Exception e) {
-      System.err.println("ERROR: Unexpected error - " + e.getMessage());
+    if (!hasChoices) {
+      System.err.println("ERROR: No choices returned from API");
       return null;
     }
+
+    Choice result = chatCompletionResult.getChoices().iterator().next();
+    System.out.println("DEBUG: Received response: " + result.getChatMessage().getContent());
+    return result.getChatMessage();
   }
 
   /** Creates a fresh chat completion request with standard settings. */
@@ -397,70 +620,35 @@ public class ChatController {
         .setN(1)
         .setTemperature(0.2)
         .setTopP(0.5)
-        .setModel(ChatCompletionRequest.Model.GPT_4_1_NANO)
+        .setModel(CHAT_MODEL)
         .setMaxTokens(150); // Limited to 150 tokens for concise responses
   }
 
   /**
-   * Adds conversation history to the chat request for context. Limits history to prevent token
-   * overflow.
+   * Chooses the conversation history for a request. The participant's recent history is merged
+   * with the recent shared history, leaving out the participant's messages already covered by the
+   * summary, and the most recent and relevant messages are kept within the prompt token budget of
+   * {@link #CHAT_MODEL}.
    */
-  private void addConversationHistoryToRequest(ChatCompletionRequest request) {
-    // Limit conversation history to last 6 messages to prevent token overflow
-    final int LIMIT = 6;
-
-    // Add participant's own history (recent messages only)
-    List<String> participantHistory = conversationHistories.get(participantRole);
-    if (participantHistory != null) {
-      int startIndex = Math.max(0, participantHistory.size() - LIMIT);
-      List<String> recentHistory =
-          participantHistory.subList(startIndex, participantHistory.size());
-      addHistoryMessagesToRequest(request, recentHistory);
-    }
-
-    // Add shared conversation history (recent messages only, excluding messages already in
-    // participant's history)
-    List<String> currentHistory = conversationHistories.get(participantRole);
-    int sharedStartIndex = Math.max(0, sharedConversationHistory.size() - LIMIT);
-
-    for (int i = sharedStartIndex; i < sharedConversationHistory.size(); i++) {
-      String sharedMsg = sharedConversationHistory.get(i);
-      if (currentHistory == null || !currentHistory.contains(sharedMsg)) {
-        addParsedMessageToRequest(request, sharedMsg);
-      }
-    }
-  }
-
-  /** Adds a list of history messages to the chat request. */
-  private void addHistoryMessagesToRequest(ChatCompletionRequest request, List<String> history) {
-    if (history != null) {
-      for (String historyMsg : history) {
-        addParsedMessageToRequest(request, historyMsg);
-      }
-    }
-  }
-
-  /** Parses a history message and adds it to the chat request. */
-  private void addParsedMessageToRequest(ChatCompletionRequest request, String historyMsg) {
-    String[] parts = historyMsg.split(": ", 2);
-    if (parts.length == 2) {
-      String speaker = parts[0];
-      String content = parts[1];
-      String role = mapSpeakerToRole(speaker);
-      request.addMessage(role, content);
-    }
-  }
-
-  private String mapSpeakerToRole(String speaker) {
-    switch (speaker) { // maps display names back to roles
-      case "MediSort-5":
-      case "Dr. Payne Gaun":
-      case "PathoScan-7":
-        return "assistant";
-      case "User":
-      default: // fallback to user role
-        return "user";
-    }
+  ContextWindowBuilder.Window buildContextWindow(
+      String systemPrompt,
+      ConversationSummarizer.Summary summary,
+      String summaryMessage,
+      ChatMessage msg) {
+    long summarized = summary == null ? -1 : summary.getCoversThroughSequence();
+    List<ConversationEntry> candidates = new ArrayList<>();
+    conversationStore.forEachInContext(
+        participantRole,
+        HISTORY_CANDIDATES,
+        HISTORY_CANDIDATES,
+        entry -> {
+          if (!participantRole.equals(entry.getParticipantId())
+              || entry.getSequence() > summarized) {
+            candidates.add(entry);
+          }
+        });
+    return ContextWindowBuilder.forModel(CHAT_MODEL)
+        .build(systemPrompt, summaryMessage, candidates, participantRole, msg.getContent());
   }
 
   private void startLoadingAnimation() {
@@ -472,8 +660,9 @@ public class ChatController {
                 event -> {
                   loadingDotCount = (loadingDotCount % 3) + 1; // cycle through 1 to 3 dots
                   String dots = " " + ".".repeat(loadingDotCount); // create dots string
-                  removeLoadingText();
-                  txtaChat.appendText(loadingBaseText + dots + "\n\n");
+                  if (replyLine != null) {
+                    replyLine.setText(loadingBaseText + dots); // only this cell is redrawn
+                  }
                 }));
     loadingTimeline.setCycleCount(Timeline.INDEFINITE); // repeat indefinitely
     loadingTimeline.play();
@@ -487,12 +676,10 @@ public class ChatController {
   }
 
   private void removeLoadingText() {
-    String chatText = txtaChat.getText();
-    // Remove any line that starts with the loading base text
-    chatText =
-        chatText.replaceAll(
-            "(?m)^" + java.util.regex.Pattern.quote(loadingBaseText) + ".*\\n\\n", "");
-    txtaChat.setText(chatText);
+    if (replyLine != null) {
+      transcript.remove(replyLine);
+      replyLine = null;
+    }
   }
 
   // Add this method to the parent ChatController class
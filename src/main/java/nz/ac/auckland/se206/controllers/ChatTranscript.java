@@ -0,0 +1,141 @@
+package nz.ac.auckland.se206.controllers;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import nz.ac.auckland.se206.conversation.ConversationEntry;
+
+/**
+ * Chat transcript shown in a {@link ListView}, one cell per message. Only the visible messages
+ * have cells, and each message's text is a property, so a loading indicator or a streamed reply is
+ * updated in place instead of rewriting the whole transcript.
+ */
+public class ChatTranscript {
+
+  /** One message in the transcript. Its text can change while it is shown. */
+  public static class Line {
+    private final StringProperty text;
+
+    private Line(String text) {
+      this.text = new SimpleStringProperty(text);
+    }
+
+    public String getText() {
+      return text.get();
+    }
+
+    public void setText(String text) {
+      this.text.set(text);
+    }
+
+    /**
+     * Adds text to the end of the message.
+     *
+     * @param more the text to add
+     */
+    public void append(String more) {
+      text.set(text.get() + more);
+    }
+
+    public StringProperty textProperty() {
+      return text;
+    }
+  }
+
+  // Leaves room for the vertical scroll bar and cell padding when wrapping
+  private static final double WRAP_MARGIN = 30;
+
+  private final ListView<Line> view;
+
+  /**
+   * Sets up a list view to show a transcript.
+   *
+   * @param view the list view from the FXML
+   */
+  public ChatTranscript(ListView<Line> view) {
+    this.view = view;
+    view.setFocusTraversable(false);
+    view.setCellFactory(list -> new LineCell());
+  }
+
+  /**
+   * Adds a message to the end of the transcript and scrolls to it.
+   *
+   * @param text the message, including the speaker
+   * @return the new line, which can be updated in place
+   */
+  public Line append(String text) {
+    Line line = new Line(text);
+    view.getItems().add(line);
+    scrollToEnd();
+    return line;
+  }
+
+  /**
+   * Removes a message.
+   *
+   * @param line the line to remove
+   */
+  public void remove(Line line) {
+    view.getItems().remove(line);
+  }
+
+  /** Removes every message. */
+  public void clear() {
+    view.getItems().clear();
+  }
+
+  /**
+   * Replaces the transcript with a conversation history.
+   *
+   * @param history the entries to show, oldest first
+   */
+  public void showHistory(List<ConversationEntry> history) {
+    List<Line> lines = new ArrayList<>(history.size());
+    for (ConversationEntry entry : history) {
+      lines.add(new Line(entry.toDisplayString()));
+    }
+    view.getItems().setAll(lines);
+    scrollToEnd();
+  }
+
+  /** Scrolls so the newest message is visible. */
+  public void scrollToEnd() {
+    if (!view.getItems().isEmpty()) {
+      view.scrollTo(view.getItems().size() - 1);
+    }
+  }
+
+  /** Shows a line as a wrapped label bound to the line's text. */
+  private class LineCell extends ListCell<Line> {
+    private final Label label = new Label();
+
+    private LineCell() {
+      label.setWrapText(true);
+      label.setPadding(new Insets(0, 0, 6, 0));
+      label.getStyleClass().add("transcript-line");
+      label.prefWidthProperty().bind(view.widthProperty().subtract(WRAP_MARGIN));
+      // Messages are read-only, so clicks go straight through to the list for scrolling
+      setMouseTransparent(true);
+    }
+
+    @Override
+    protected void updateItem(Line line, boolean empty) {
+      super.updateItem(line, empty);
+      label.textProperty().unbind();
+      setText(null);
+      if (empty || line == null) {
+        label.setText(null);
+        setGraphic(null);
+      } else {
+        label.textProperty().bind(line.textProperty());
+        setGraphic(label);
+      }
+    }
+  }
+}
@@ -4,20 +4,23 @@ import java.io.IOException;
 import java.util.List;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import nz.ac.auckland.se206.GameTimer;
+import nz.ac.auckland.se206.SceneRegistry;
+import nz.ac.auckland.se206.SceneRegistry.View;
+import nz.ac.auckland.se206.images.ImageCache;
 
 // Controller for the flashback slideshow functionality.
 public class FlashbackController {
 
+  private static final double SLIDE_WIDTH = 600;
+  private static final double SLIDE_HEIGHT = 400;
+
   @FXML private Label lblTitle;
   @FXML private ImageView imgFlashback;
   @FXML private Text txtFlashbackContent;
@@ -28,7 +31,7 @@ public class FlashbackController {
   private List<FlashbackSlide> slides;
   private int currentSlideIndex = 0;
   private String participantId;
-  private String returnFxml;
+  private View returnView;
 
   // Represents a single slide in the flashback.
   public static class FlashbackSlide {
@@ -50,15 +53,30 @@ public class FlashbackController {
   }
 
   /**
-   * Initializes the flashback with participant-specific content.
+   * Starts decoding a participant's first flashback slide in the background, so the flashback opens
+   * without waiting for the image.
+   *
+   * @param participantId the ID of the participant whose flashback may be shown next
+   */
+  public static void prefetchFirstSlide(String participantId) {
+    prefetch(getFlashbackSlides(participantId).get(0));
+  }
+
+  private static void prefetch(FlashbackSlide slide) {
+    ImageCache.getInstance().prefetch(slide.getImagePath(), SLIDE_WIDTH, SLIDE_HEIGHT);
+  }
+
+  /**
+   * Initializes the flashback with participant-specific content, starting from the first slide.
    *
    * @param participantId the ID of the participant whose flashback to show
-   * @param returnFxml the FXML file to return to after the flashback
+   * @param returnView the chat view to return to after the flashback
    */
-  public void initializeFlashback(String participantId, String returnFxml) {
+  public void initializeFlashback(String participantId, View returnView) {
     this.participantId = participantId;
-    this.returnFxml = returnFxml;
+    this.returnView = returnView;
     this.slides = getFlashbackSlides(participantId);
+    this.currentSlideIndex = 0;
 
     // Mark this scene as a flashback
     Platform.runLater(
@@ -98,26 +116,19 @@ public class FlashbackController {
 
     FlashbackSlide slide = slides.get(slideIndex);
 
-    // Load image with high quality settings
-    try {
-      // Load image with specific dimensions for better quality
-      Image image =
-          new Image(
-              getClass().getResourceAsStream(slide.getImagePath()),
-              600,
-              400,
-              true,
-              true); // width, height, preserveRatio, smooth
-      imgFlashback.setImage(image);
-
-      // Ensure ImageView displays at full quality
-      imgFlashback.setFitWidth(600);
-      imgFlashback.setFitHeight(400);
-      imgFlashback.setPreserveRatio(true);
-      imgFlashback.setSmooth(true); // Enable smooth scaling
-    } catch (Exception e) {
-      System.err.println("Failed to load flashback image: " + slide.getImagePath());
-      // Handle image loading error gracefully
+    // Image is decoded at the slide size, or taken from the cache if it was prefetched
+    imgFlashback.setImage(
+        ImageCache.getInstance().get(slide.getImagePath(), SLIDE_WIDTH, SLIDE_HEIGHT));
+
+    // Ensure ImageView displays at full quality
+    imgFlashback.setFitWidth(SLIDE_WIDTH);
+    imgFlashback.setFitHeight(SLIDE_HEIGHT);
+    imgFlashback.setPreserveRatio(true);
+    imgFlashback.setSmooth(true); // Enable smooth scaling
+
+    // Decode the next slide while this one is being read
+    if (slideIndex + 1 < slides.size()) {
+      prefetch(slides.get(slideIndex + 1));
     }
 
     // Set text
@@ -149,26 +160,18 @@ public class FlashbackController {
   // Returns to the appropriate chat interface.
   private void returnToChat() {
     try {
-      FXMLLoader loader = new FXMLLoader(getClass().getResource(returnFxml));
-      Parent root = loader.load();
-
-      // Set up the chat controller
-      Object controller = loader.getController();
-      if (controller instanceof ChatController) {
-        ChatController chatController = (ChatController) controller;
-        chatController.setParticipant(participantId);
-        ChatController.showConversationHistory(
-            TrialRoomController.conversationHistories.get(participantId));
-        Scene trialScene = TrialRoomController.getTrialRoomScene();
-        if (trialScene != null) {
-          ChatController.setPreviousScene(trialScene);
-        }
+      SceneRegistry registry = SceneRegistry.getInstance();
+
+      // Set up the chat controller; it shows the participant's history when shown
+      ChatController chatController = registry.getController(returnView);
+      chatController.setParticipant(participantId);
+      Scene trialScene = TrialRoomController.getTrialRoomScene();
+      if (trialScene != null) {
+        ChatController.setPreviousScene(trialScene);
       }
 
-      Scene scene = new Scene(root);
       Stage stage = (Stage) btnNext.getScene().getWindow();
-      stage.setScene(scene);
-      stage.show();
+      registry.show(stage, returnView);
 
     } catch (IOException e) {
       System.err.println("Failed to return to chat interface: " + e.getMessage());
@@ -176,7 +179,7 @@ public class FlashbackController {
   }
 
   // Gets the flashback slides for the specified participant.
-  private List<FlashbackSlide> getFlashbackSlides(String participantId) {
+  private static List<FlashbackSlide> getFlashbackSlides(String participantId) {
     switch (participantId) { // switch based on particiapant clicked on by user
       case "aiDefendent":
         return getAiDefendantFlashback();
@@ -190,7 +193,7 @@ public class FlashbackController {
   }
 
   // Gets the AI Defendant's flashback slides.
-  private List<FlashbackSlide> getAiDefendantFlashback() {
+  private static List<FlashbackSlide> getAiDefendantFlashback() {
     return List.of(
         // slide 1
         new FlashbackSlide(
@@ -218,7 +221,7 @@ public class FlashbackController {
   }
 
   // Gets the Human Witness's flashback slides (placeholder).
-  private List<FlashbackSlide> getHumanWitnessFlashback() {
+  private static List<FlashbackSlide> getHumanWitnessFlashback() {
     return List.of(
        // slide 1
         new FlashbackSlide(
@@ -239,7 +242,7 @@ public class FlashbackController {
   }
 
   // Gets the AI Witness's flashback slides (placeholder).
-  private List<FlashbackSlide> getAiWitnessFlashback() {
+  private static List<FlashbackSlide> getAiWitnessFlashback() {
     return List.of(
         // slide 1
         new FlashbackSlide(
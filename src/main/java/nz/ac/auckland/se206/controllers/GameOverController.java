@@ -2,12 +2,12 @@ package nz.ac.auckland.se206.controllers;
 
 import java.io.IOException;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.stage.Stage;
 import nz.ac.auckland.se206.GameTimer;
+import nz.ac.auckland.se206.SceneRegistry;
+import nz.ac.auckland.se206.SceneRegistry.View;
+import nz.ac.auckland.se206.speech.TextToSpeech;
 
 public class GameOverController {
 
@@ -22,21 +22,17 @@ public class GameOverController {
       // Reset game state
       TrialRoomController.resetInteractions();
       GameTimer.getInstance().stop();
+      TextToSpeech.stopAll();
 
       // Reset all controller states
       AiWitnessController.resetState();
       HumanWitnessController.resetState();
 
-      // Load trial room scene
-      FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/trialroom.fxml"));
-      Parent root = loader.load();
-
-      // Get the current stage
+      // Load fresh scenes for the new game, starting with the trial room
       Stage stage = (Stage) btnReplay.getScene().getWindow();
-
-      Scene scene = new Scene(root);
-      stage.setScene(scene);
-      stage.show();
+      SceneRegistry registry = SceneRegistry.getInstance();
+      registry.reset();
+      registry.show(stage, View.TRIAL_ROOM);
     } catch (IOException e) {
       e.printStackTrace();
     }
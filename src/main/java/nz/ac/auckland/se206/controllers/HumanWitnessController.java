@@ -3,17 +3,19 @@ package nz.ac.auckland.se206.controllers;
 import java.io.IOException;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
 import nz.ac.auckland.apiproxy.chat.openai.ChatMessage;
 import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+import nz.ac.auckland.se206.images.ImageCache;
 
 /** Controller for the Human Witness (Dr. Payne Gaun) chat interface. */
 public class HumanWitnessController extends ChatController {
 
   private static final String PARTICIPANT_ROLE = "humanWitness";
+  private static final String NOTES_A_IMAGE = "/images/doctorNotesA.png";
+  private static final String NOTES_B_IMAGE = "/images/doctorNotesB.png";
   private static Boolean noteASeen = false;
   private static Boolean noteBSeen = false;
   @FXML private Pane notePane;
@@ -27,6 +29,12 @@ public class HumanWitnessController extends ChatController {
     if (notePane != null) {
       notePane.setVisible(false);
     }
+    // Decode the notes ahead of time so opening them does not stall
+    if (imgNotes != null) {
+      ImageCache cache = ImageCache.getInstance();
+      cache.prefetch(NOTES_A_IMAGE, imgNotes.getFitWidth(), imgNotes.getFitHeight());
+      cache.prefetch(NOTES_B_IMAGE, imgNotes.getFitWidth(), imgNotes.getFitHeight());
+    }
   }
 
   /**
@@ -57,7 +65,9 @@ public class HumanWitnessController extends ChatController {
    */
   @FXML
   private void onViewPatientBetaNotes() {
-    imgNotes.setImage(new Image(getClass().getResourceAsStream("/images/doctorNotesB.png")));
+    imgNotes.setImage(
+        ImageCache.getInstance()
+            .get(NOTES_B_IMAGE, imgNotes.getFitWidth(), imgNotes.getFitHeight()));
 
     // First update the flag that notes have been seen
     boolean firstTimeViewing = !noteBSeen;
@@ -93,7 +103,9 @@ public class HumanWitnessController extends ChatController {
    */
   @FXML
   private void onViewPatientAlphaNotes() {
-    imgNotes.setImage(new Image(getClass().getResourceAsStream("/images/doctorNotesA.png")));
+    imgNotes.setImage(
+        ImageCache.getInstance()
+            .get(NOTES_A_IMAGE, imgNotes.getFitWidth(), imgNotes.getFitHeight()));
 
     // First update the flag that notes have been seen
     boolean firstTimeViewing = !noteASeen;
@@ -134,24 +146,20 @@ public class HumanWitnessController extends ChatController {
       super.initializeChatRequest(); // Ensure chat request is initialized
     }
 
-    new Thread(
-            () -> {
-              try {
-                ChatMessage systemMessage = new ChatMessage("system", systemPrompt);
-                ChatMessage aiResponse = super.runGpt(systemMessage); // Get AI response
-
-                if (aiResponse != null) {
-                  // Update UI with AI response
-                  Platform.runLater(
-                      () -> {
-                        processAiResponse(aiResponse);
-                      });
-                }
-              } catch (Exception e) {
-                e.printStackTrace();
+    ChatMessage systemMessage = new ChatMessage("system", systemPrompt);
+    super.runGptAsync(systemMessage) // Get AI response
+        .whenComplete(
+            (aiResponse, error) -> {
+              if (aiResponse != null) {
+                // Update UI with AI response
+                Platform.runLater(
+                    () -> {
+                      processAiResponse(aiResponse);
+                    });
+              } else if (error != null) {
+                error.printStackTrace();
               }
-            })
-        .start();
+            });
   }
 
   private static final String NOTE_A_CONTENT =
@@ -1,23 +1,24 @@
 package nz.ac.auckland.se206.controllers;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
-import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.shape.Rectangle;
 import javafx.stage.Stage;
+import nz.ac.auckland.se206.SceneRegistry;
+import nz.ac.auckland.se206.SceneRegistry.View;
+import nz.ac.auckland.se206.conversation.ConversationStore;
+import nz.ac.auckland.se206.conversation.ConversationSummarizer;
+import nz.ac.auckland.se206.conversation.ReplyPrefetcher;
 import nz.ac.auckland.se206.speech.TextToSpeech;
 
-public class TrialRoomController {
+public class TrialRoomController implements SceneRegistry.ReusableController {
 
   private static final Set<String> flashbackShown = new HashSet<>();
   private static final Set<String> chatboxesInteracted = new HashSet<>(); // Track interactions
@@ -37,33 +38,15 @@ public class TrialRoomController {
   private static final String AI_WITNESS = "aiWitness";
 
   // === State ===
-  static final java.util.Map<String, List<String>> conversationHistories =
-      new java.util.HashMap<>();
-  // Shared conversation history (excluding flashbacks) that all participants can access
-  static final List<String> sharedConversationHistory = new ArrayList<>();
   private boolean verdictGiven = false;
 
   // === FXML lifecycle ===
   /**
-   * Initializes the Trial Room scene, setting up UI components, timer bindings, and game state.
-   * This method is automatically called when the FXML is loaded.
+   * Initializes the Trial Room scene's UI components. This method is automatically called when the
+   * FXML is loaded, possibly on a background thread, so game state is set up in {@link #onShow()}.
    */
   @FXML
   void initialize() {
-    // Store reference to trial room scene
-    javafx.application.Platform.runLater(
-        () -> {
-          if (btnVerdict != null) {
-            trialRoomScene = btnVerdict.getScene();
-
-            // Store current stage for timer transitions
-            if (trialRoomScene != null && trialRoomScene.getWindow() instanceof Stage) {
-              nz.ac.auckland.se206.GameTimer.getInstance()
-                  .setCurrentStage((Stage) trialRoomScene.getWindow());
-            }
-          }
-        });
-
     // Ensure verdict buttons are visible at start
     if (btnGuilty != null) {
       btnGuilty.setVisible(true);
@@ -78,6 +61,24 @@ public class TrialRoomController {
     if (btnVerdict != null) {
       btnVerdict.setDisable(true);
     }
+  }
+
+  /**
+   * Sets up timer bindings and game state each time the Trial Room is shown, starting the game on
+   * the first visit.
+   */
+  @Override
+  public void onShow() {
+    // Store reference to trial room scene
+    if (btnVerdict != null) {
+      trialRoomScene = btnVerdict.getScene();
+
+      // Store current stage for timer transitions
+      if (trialRoomScene != null && trialRoomScene.getWindow() instanceof Stage) {
+        nz.ac.auckland.se206.GameTimer.getInstance()
+            .setCurrentStage((Stage) trialRoomScene.getWindow());
+      }
+    }
 
     if (isFirstTime) {
       TextToSpeech.speak(
@@ -100,6 +101,13 @@ public class TrialRoomController {
 
     // Check if we should enable the verdict button (if returning to this scene)
     updateVerdictButtonState();
+
+    // Any flashback not seen yet may be opened next, so decode its first slide now
+    for (String participantId : new String[] {AI_DEFENDANT, HUMAN_WITNESS, AI_WITNESS}) {
+      if (!flashbackShown.contains(participantId)) {
+        FlashbackController.prefetchFirstSlide(participantId);
+      }
+    }
   }
 
   // === Event Handlers ===
@@ -162,15 +170,9 @@ public class TrialRoomController {
   /** Displays the game over screen when the player fails to gather enough evidence. */
   private void showGameOverScreen() {
     try {
-      FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/gameover.fxml"));
-      Parent root = loader.load();
-
       // Get the current stage
       Stage stage = (Stage) lblTimer.getScene().getWindow();
-
-      Scene scene = new Scene(root);
-      stage.setScene(scene);
-      stage.show();
+      SceneRegistry.getInstance().show(stage, View.GAME_OVER);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -219,9 +221,6 @@ public class TrialRoomController {
     // Update verdict button state
     updateVerdictButtonState();
 
-    // Ensure a conversation history exists for this participant
-    conversationHistories.computeIfAbsent(participantId, k -> new ArrayList<>());
-
     // Check if flashback should be shown first
     if (!flashbackShown.contains(participantId)) {
       showFlashback(participantId, event);
@@ -258,18 +257,11 @@ public class TrialRoomController {
 
     try {
       System.out.println("Switching to verdict scene...");
-      FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/verdict.fxml"));
-      Parent root = loader.load();
-
       // Get the current stage
       Stage stage = (Stage) lblTimer.getScene().getWindow();
-
-      Scene scene = new Scene(root);
-      stage.setScene(scene);
-      stage.show();
+      VerdictController controller = SceneRegistry.getInstance().show(stage, View.VERDICT);
 
       // Access the controller to ensure verdict timer starts
-      VerdictController controller = loader.getController();
       if (controller != null) {
         controller.startVerdictTimer();
       }
@@ -286,17 +278,18 @@ public class TrialRoomController {
    * @throws IOException if there is an error loading the flashback FXML
    */
   private void showFlashback(String participantId, MouseEvent event) throws IOException {
-    FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/flashback.fxml"));
-    Parent root = loader.load();
-
-    FlashbackController controller = loader.getController();
-    String returnFxml = getFxmlFileForParticipant(participantId);
-    controller.initializeFlashback(participantId, returnFxml);
+    SceneRegistry registry = SceneRegistry.getInstance();
+    FlashbackController controller = registry.getController(View.FLASHBACK);
+    View chatView = getViewForParticipant(participantId);
+    controller.initializeFlashback(participantId, chatView);
+    // The first question to a participant is predictable, so ask it while the flashback plays
+    if (chatView != null) {
+      ChatController chat = registry.getController(chatView);
+      chat.prefetchOpeningReplies();
+    }
     // Set up scene
-    Scene scene = new Scene(root);
     Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow(); // Get current stage
-    stage.setScene(scene);
-    stage.show();
+    registry.show(stage, View.FLASHBACK);
   }
 
   /**
@@ -307,48 +300,40 @@ public class TrialRoomController {
    * @throws IOException if there is an error loading the chat FXML
    */
   private void showChatInterface(String participantId, MouseEvent event) throws IOException {
-    String fxmlFile = getFxmlFileForParticipant(participantId);
-    if (fxmlFile == null) {
+    View view = getViewForParticipant(participantId);
+    if (view == null) {
       return;
     }
 
     try {
-      FXMLLoader loader = new FXMLLoader(getClass().getResource(fxmlFile));
-      Parent root = loader.load();
-
-      // Set participant in ChatController if present and show conversation history
-      Object controller = loader.getController();
-      if (controller instanceof ChatController) {
-        ((ChatController) controller).setParticipant(participantId);
-        // Show conversation history in chat area for this participant
-        ChatController.showConversationHistory(conversationHistories.get(participantId));
-        // Set previous scene so chat can return
-        ChatController.setPreviousScene(((Node) event.getSource()).getScene());
-      }
+      SceneRegistry registry = SceneRegistry.getInstance();
+      // Set participant in ChatController; it shows this participant's history when shown
+      ChatController controller = registry.getController(view);
+      controller.setParticipant(participantId);
+      // Set previous scene so chat can return
+      ChatController.setPreviousScene(((Node) event.getSource()).getScene());
 
-      Scene scene = new Scene(root);
       Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
-      stage.setScene(scene);
-      stage.show();
+      registry.show(stage, view);
     } catch (IOException e) {
       e.printStackTrace();
     }
   }
 
   /**
-   * Gets the FXML file path for a given participant ID.
+   * Gets the chat view for a given participant ID.
    *
    * @param participantId the ID of the participant
-   * @return the FXML file path for the participant, or null if not found
+   * @return the chat view for the participant, or null if not found
    */
-  private String getFxmlFileForParticipant(String participantId) {
-    switch (participantId) { // Return appropriate FXML file based on participant ID
+  private View getViewForParticipant(String participantId) {
+    switch (participantId) { // Return appropriate view based on participant ID
       case AI_DEFENDANT:
-        return "/fxml/aiDef.fxml";
+        return View.AI_DEFENDANT;
       case HUMAN_WITNESS:
-        return "/fxml/humanWit.fxml";
+        return View.HUMAN_WITNESS;
       case AI_WITNESS:
-        return "/fxml/aiWit.fxml";
+        return View.AI_WITNESS;
       default:
         return null; // fallback for errors
     }
@@ -379,8 +364,9 @@ public class TrialRoomController {
   public static void resetInteractions() {
     chatboxesInteracted.clear();
     flashbackShown.clear();
-    conversationHistories.clear();
-    sharedConversationHistory.clear();
+    ConversationStore.getInstance().clear();
+    ConversationSummarizer.getInstance().clear();
+    ReplyPrefetcher.getInstance().clear();
     isFirstTime = true;
   }
 
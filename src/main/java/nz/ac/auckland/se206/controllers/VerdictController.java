@@ -1,13 +1,12 @@
 package nz.ac.auckland.se206.controllers;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextArea;
@@ -17,14 +16,17 @@ import javafx.scene.shape.Rectangle;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 import nz.ac.auckland.apiproxy.chat.openai.ChatCompletionRequest;
-import nz.ac.auckland.apiproxy.chat.openai.ChatCompletionResult;
 import nz.ac.auckland.apiproxy.chat.openai.Choice;
 import nz.ac.auckland.apiproxy.config.ApiProxyConfig;
 import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+import nz.ac.auckland.se206.BackgroundExecutor;
+import nz.ac.auckland.se206.BackgroundExecutor.Category;
 import nz.ac.auckland.se206.GameTimer;
+import nz.ac.auckland.se206.SceneRegistry;
+import nz.ac.auckland.se206.SceneRegistry.View;
 import nz.ac.auckland.se206.speech.TextToSpeech;
 
-public class VerdictController {
+public class VerdictController implements SceneRegistry.ReusableController {
 
   @FXML private TextArea txtaChat;
   @FXML private TextField txtInput;
@@ -39,27 +41,18 @@ public class VerdictController {
   private boolean verdictSubmitted = false;
   private String selectedVerdict;
 
+  private static final long FEEDBACK_TIMEOUT_SECONDS = 45;
+
   private String playerRationale; // Missing declaration
   private boolean verdictGiven = false; // Missing declaration
 
   /**
-   * Initializes the verdict controller. Sets up timer binding, verdict phase, conversation summary,
-   * and verdict button handlers.
+   * Initializes the verdict controller. Sets up the conversation summary and verdict button
+   * handlers; the timer is set up in {@link #onShow()} since the view may be loaded in advance.
    */
   @FXML
   public void initialize() {
     System.out.println("VerdictController initialized");
-    GameTimer.setActiveController(this);
-
-    // Bind the timer label to the global timer
-    if (lblVerdictTimer != null) {
-      lblVerdictTimer.textProperty().bind(GameTimer.getInstance().getTimerTextProperty());
-    }
-
-    // Make sure we're in verdict phase
-    if (!GameTimer.getInstance().isInVerdictPhase()) {
-      startVerdictTimer();
-    }
 
     // Initially disable text input and send button until verdict is selected
     txtInput.setDisable(true);
@@ -71,6 +64,22 @@ public class VerdictController {
 
     // Set up the click handlers for verdict buttons
     setupVerdictButtons();
+  }
+
+  /** Sets up the timer binding, verdict phase and timer expiration handling once shown. */
+  @Override
+  public void onShow() {
+    GameTimer.setActiveController(this);
+
+    // Bind the timer label to the global timer
+    if (lblVerdictTimer != null) {
+      lblVerdictTimer.textProperty().bind(GameTimer.getInstance().getTimerTextProperty());
+    }
+
+    // Make sure we're in verdict phase
+    if (!GameTimer.getInstance().isInVerdictPhase()) {
+      startVerdictTimer();
+    }
 
     // Subscribe to timer expiration event
     GameTimer.getInstance()
@@ -214,7 +223,7 @@ public class VerdictController {
 
   /**
    * Processes the final verdict with rationale and initiates LLM feedback analysis. Runs the LLM
-   * analysis in a background thread to avoid UI freezing.
+   * analysis asynchronously to avoid UI freezing.
    */
   private void handleFinalVerdict() {
     if (verdictGiven) {
@@ -235,45 +244,62 @@ public class VerdictController {
     // Determine if guilty for fallback logic
     boolean guilty = "GUILTY".equals(selectedVerdict);
 
-    // Run LLM analysis in a background thread to avoid freezing UI
-    Thread analysisThread =
-        new Thread(
-            () -> {
-              try {
-                String feedback = getFeedback(selectedVerdict, playerRationale);
-
-                // Update UI on JavaFX thread
+    // Run LLM analysis asynchronously to avoid freezing UI
+    getFeedbackAsync(selectedVerdict, playerRationale)
+        .whenComplete(
+            (feedback, error) ->
                 Platform.runLater(
                     () -> {
-                      displayFeedback(feedback);
+                      if (error == null) {
+                        displayFeedback(feedback);
 
-                      // Show results after a delay
-                      PauseTransition pause = new PauseTransition(Duration.seconds(4));
-                      pause.setOnFinished(e -> showResults());
-                      pause.play();
-                    });
+                        // Show results after a delay
+                        PauseTransition pause = new PauseTransition(Duration.seconds(4));
+                        pause.setOnFinished(e -> showResults());
+                        pause.play();
+                        return;
+                      }
 
-              } catch (ApiProxyException | IOException | RuntimeException e) {
-                System.err.println("Error getting LLM feedback: " + e.getMessage());
+                      System.err.println("Error getting LLM feedback: " + error.getMessage());
 
-                // Fallback to basic feedback on UI thread
-                Platform.runLater(
-                    () -> {
+                      // Fallback to basic feedback
                       displayBasicFeedback(guilty);
 
                       PauseTransition pause = new PauseTransition(Duration.seconds(3));
                       pause.setOnFinished(ev -> showResults());
                       pause.play();
-                    });
+                    }));
+  }
+
+  /**
+   * Gets LLM feedback on the player's verdict and rationale without blocking the caller.
+   *
+   * @return a future completed with the feedback text, or exceptionally if the LLM call failed
+   */
+  private CompletableFuture<String> getFeedbackAsync(String verdict, String rationale) {
+    ChatCompletionRequest request;
+    try {
+      request = createFeedbackRequest(verdict, rationale);
+    } catch (ApiProxyException | IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    return request
+        .executeAsync(BackgroundExecutor.getInstance().executor(Category.VERDICT))
+        .orTimeout(FEEDBACK_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        .thenApply(
+            result -> {
+              if (result != null && result.getChoices() != null) {
+                for (Choice choice : result.getChoices()) {
+                  return choice.getChatMessage().getContent();
+                }
               }
+              throw new RuntimeException("No response from LLM");
             });
-
-    analysisThread.setDaemon(true);
-    analysisThread.start();
   }
 
-  /** Gets LLM feedback on the player's verdict and rationale. */
-  private String getFeedback(String verdict, String rationale)
+  /** Builds the request asking the LLM for feedback on the player's verdict and rationale. */
+  private ChatCompletionRequest createFeedbackRequest(String verdict, String rationale)
       throws ApiProxyException, IOException {
     // Read the verdict prompt
     String verdictPrompt =
@@ -300,17 +326,7 @@ public class VerdictController {
             verdict, rationale.isEmpty() ? "No rationale provided" : rationale);
 
     request.addMessage("user", userMessage);
-
-    // Execute request
-    ChatCompletionResult result = request.execute();
-
-    if (result != null && result.getChoices() != null) {
-      for (Choice choice : result.getChoices()) {
-        return choice.getChatMessage().getContent();
-      }
-    }
-
-    throw new RuntimeException("No response from LLM");
+    return request;
   }
 
   /** Displays the LLM feedback to the player. */
@@ -367,20 +383,16 @@ public class VerdictController {
       // Reset game state
       TrialRoomController.resetInteractions();
       GameTimer.getInstance().stop();
+      TextToSpeech.stopAll();
 
       AiWitnessController.resetState();
       HumanWitnessController.resetState();
 
-      // Load trial room scene
-      FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/trialroom.fxml"));
-      Parent root = loader.load();
-
-      // Get the current stage
+      // Load fresh scenes for the new game, starting with the trial room
       Stage stage = (Stage) btnReplay.getScene().getWindow();
-
-      Scene scene = new Scene(root);
-      stage.setScene(scene);
-      stage.show();
+      SceneRegistry registry = SceneRegistry.getInstance();
+      registry.reset();
+      registry.show(stage, View.TRIAL_ROOM);
     } catch (IOException e) {
       System.err.println("Error loading trial room scene: " + e.getMessage());
     }
@@ -0,0 +1,212 @@
+package nz.ac.auckland.se206.conversation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import nz.ac.auckland.apiproxy.chat.openai.ChatCompletionRequest.Model;
+import nz.ac.auckland.apiproxy.chat.openai.TokenEstimator;
+
+/**
+ * Chooses which history entries go into a chat request so its prompt stays within a token budget.
+ * The system prompt, any summary of older history and the new message are always sent; the
+ * remaining budget is filled with the newest turns first, then with the older turns that score
+ * best on recency, on sharing words with the new message and on belonging to the participant being
+ * asked.
+ *
+ * <p>The budget of a model can be changed with the system property {@code
+ * context.budget.<model name>}, e.g. {@code -Dcontext.budget.gpt-4.1-nano=1500}.
+ */
+public class ContextWindowBuilder {
+
+  /** The history entries chosen for a request and the estimated size of the whole prompt. */
+  public static class Window {
+    private final List<ConversationEntry> entries;
+    private final int promptTokens;
+    private final int candidateCount;
+
+    private Window(List<ConversationEntry> entries, int promptTokens, int candidateCount) {
+      this.entries = entries;
+      this.promptTokens = promptTokens;
+      this.candidateCount = candidateCount;
+    }
+
+    /** The chosen entries, oldest first. */
+    public List<ConversationEntry> getEntries() {
+      return entries;
+    }
+
+    /** The estimated prompt tokens of the system prompt, chosen entries and new message. */
+    public int getPromptTokens() {
+      return promptTokens;
+    }
+
+    /** How many entries were offered, including those left out. */
+    public int getCandidateCount() {
+      return candidateCount;
+    }
+  }
+
+  // Turns this recent are kept ahead of any older, more relevant ones so replies stay coherent
+  private static final int GUARANTEED_RECENT = 2;
+  private static final double OWN_PARTICIPANT_BONUS = 0.25;
+  private static final int MIN_KEYWORD_LENGTH = 4;
+
+  /**
+   * Gets the default prompt budget of a model.
+   *
+   * @param model the model the request is sent to
+   * @return the maximum prompt tokens
+   */
+  public static int budgetOf(Model model) {
+    int defaultBudget;
+    switch (model) {
+      case GPT_5_NANO:
+      case GPT_4_1_NANO:
+        defaultBudget = 2000;
+        break;
+      default:
+        defaultBudget = 3000;
+        break;
+    }
+    return Integer.getInteger("context.budget." + model.getModelName(), defaultBudget);
+  }
+
+  /**
+   * Creates a builder with the budget of a model.
+   *
+   * @param model the model the request is sent to
+   * @return the builder
+   */
+  public static ContextWindowBuilder forModel(Model model) {
+    return new ContextWindowBuilder(budgetOf(model));
+  }
+
+  private final int tokenBudget;
+
+  public ContextWindowBuilder(int tokenBudget) {
+    this.tokenBudget = tokenBudget;
+  }
+
+  /**
+   * Chooses the history for a request.
+   *
+   * @param systemPrompt the system prompt, always sent
+   * @param candidates the history that may be sent, oldest first
+   * @param participantId the participant being asked
+   * @param message the new message, always sent
+   * @return the chosen entries and the estimated prompt size
+   */
+  public Window build(
+      String systemPrompt,
+      List<ConversationEntry> candidates,
+      String participantId,
+      String message) {
+    return build(systemPrompt, null, candidates, participantId, message);
+  }
+
+  /**
+   * Chooses the history for a request that also carries a summary of older history.
+   *
+   * @param systemPrompt the system prompt, always sent
+   * @param summary the summary message, always sent, or null if there is none
+   * @param candidates the history that may be sent, oldest first
+   * @param participantId the participant being asked
+   * @param message the new message, always sent
+   * @return the chosen entries and the estimated prompt size
+   */
+  public Window build(
+      String systemPrompt,
+      String summary,
+      List<ConversationEntry> candidates,
+      String participantId,
+      String message) {
+    int fixedTokens =
+        TokenEstimator.estimateMessage(systemPrompt)
+            + (summary == null ? 0 : TokenEstimator.estimateMessage(summary))
+            + TokenEstimator.estimateMessage(message)
+            + TokenEstimator.REPLY_PRIMING;
+    int remaining = tokenBudget - fixedTokens;
+    boolean[] chosen = new boolean[candidates.size()];
+
+    // Newest turns first, stopping at the first one that does not fit to avoid a gap
+    int newest = candidates.size() - 1;
+    for (int i = newest; i >= 0 && i > newest - GUARANTEED_RECENT; i--) {
+      int cost = candidates.get(i).getTokenEstimate();
+      if (cost > remaining) {
+        break;
+      }
+      chosen[i] = true;
+      remaining -= cost;
+    }
+
+    // Then the best scoring of the rest, as long as they fit
+    Set<String> keywords = keywordsOf(message);
+    List<Integer> rest = new ArrayList<>();
+    double[] scores = new double[candidates.size()];
+    for (int i = 0; i < candidates.size(); i++) {
+      if (!chosen[i]) {
+        scores[i] = score(candidates.get(i), i, candidates.size(), keywords, participantId);
+        rest.add(i);
+      }
+    }
+    rest.sort(Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+    for (int i : rest) {
+      int cost = candidates.get(i).getTokenEstimate();
+      if (cost <= remaining) {
+        chosen[i] = true;
+        remaining -= cost;
+      }
+    }
+
+    List<ConversationEntry> entries = new ArrayList<>();
+    for (int i = 0; i < candidates.size(); i++) {
+      if (chosen[i]) {
+        entries.add(candidates.get(i));
+      }
+    }
+    return new Window(
+        Collections.unmodifiableList(entries), tokenBudget - remaining, candidates.size());
+  }
+
+  public int getTokenBudget() {
+    return tokenBudget;
+  }
+
+  // Recency in (0, 1], plus the share of the message's keywords the entry mentions
+  private double score(
+      ConversationEntry entry,
+      int position,
+      int count,
+      Set<String> keywords,
+      String participantId) {
+    double score = (position + 1) / (double) count;
+    if (!keywords.isEmpty()) {
+      Set<String> entryKeywords = keywordsOf(entry.getContent());
+      int shared = 0;
+      for (String keyword : keywords) {
+        if (entryKeywords.contains(keyword)) {
+          shared++;
+        }
+      }
+      score += shared / (double) keywords.size();
+    }
+    if (entry.getParticipantId().equals(participantId)) {
+      score += OWN_PARTICIPANT_BONUS;
+    }
+    return score;
+  }
+
+  private static Set<String> keywordsOf(String text) {
+    Set<String> keywords = new HashSet<>();
+    for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+      if (word.length() >= MIN_KEYWORD_LENGTH) {
+        keywords.add(word);
+      }
+    }
+    return keywords;
+  }
+}
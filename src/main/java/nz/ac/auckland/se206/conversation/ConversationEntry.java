@@ -0,0 +1,85 @@
+package nz.ac.auckland.se206.conversation;
+
+import nz.ac.auckland.apiproxy.chat.openai.ChatMessage;
+import nz.ac.auckland.apiproxy.chat.openai.TokenEstimator;
+
+/**
+ * One immutable line of a conversation with a trial participant. The chat message sent to the API
+ * is created once, so building a request from the history does not allocate per entry.
+ */
+public class ConversationEntry {
+
+  private final long sequence;
+  private final String participantId;
+  private final String speaker;
+  private final ChatMessage message;
+  private final long timestampMillis;
+  private final int tokenEstimate;
+
+  ConversationEntry(
+      long sequence,
+      String participantId,
+      String role,
+      String speaker,
+      String content,
+      long timestampMillis) {
+    this.sequence = sequence;
+    this.participantId = participantId;
+    this.speaker = speaker;
+    this.message = new ChatMessage(role, content);
+    this.timestampMillis = timestampMillis;
+    this.tokenEstimate = TokenEstimator.estimateMessage(content);
+  }
+
+  /** The position of this entry across all conversations, increasing in the order they happened. */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /** The participant whose conversation this entry belongs to, e.g. {@code aiWitness}. */
+  public String getParticipantId() {
+    return participantId;
+  }
+
+  /** The API role of the entry, {@code user} or {@code assistant}. */
+  public String getRole() {
+    return message.getRole();
+  }
+
+  /** The name shown in the chat, e.g. {@code User} or {@code PathoScan-7}. */
+  public String getSpeaker() {
+    return speaker;
+  }
+
+  public String getContent() {
+    return message.getContent();
+  }
+
+  public long getTimestampMillis() {
+    return timestampMillis;
+  }
+
+  /** The estimated tokens this entry uses in a request, including the message overhead. */
+  public int getTokenEstimate() {
+    return tokenEstimate;
+  }
+
+  /** The entry as a message that can be added to a chat completion request. */
+  public ChatMessage getChatMessage() {
+    return message;
+  }
+
+  /**
+   * Formats the entry as it appears in the chat.
+   *
+   * @return the speaker and content, e.g. {@code User: hello}
+   */
+  public String toDisplayString() {
+    return speaker + ": " + message.getContent();
+  }
+
+  @Override
+  public String toString() {
+    return "#" + sequence + " " + toDisplayString();
+  }
+}
@@ -0,0 +1,174 @@
+package nz.ac.auckland.se206.conversation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Singleton holding the conversations with every trial participant. Each participant's entries are
+ * kept in their own ring buffer, and every entry is also added to a shared index in the order the
+ * lines were said, so the recent context of a request can be walked without parsing strings.
+ *
+ * <p>The capacity of each buffer can be changed with the system property {@code
+ * conversation.capacity} (default 256 entries); the oldest entries are dropped beyond it.
+ */
+public class ConversationStore {
+
+  private static ConversationStore instance;
+
+  public static synchronized ConversationStore getInstance() {
+    if (instance == null) {
+      instance = new ConversationStore(Integer.getInteger("conversation.capacity", 256));
+    }
+    return instance;
+  }
+
+  private final int capacity;
+  private final Map<String, EntryRing> participantEntries = new HashMap<>();
+  private EntryRing sharedEntries;
+  private long nextSequence;
+
+  ConversationStore(int capacity) {
+    this.capacity = capacity;
+    this.sharedEntries = new EntryRing(capacity);
+  }
+
+  /**
+   * Adds a line to a participant's conversation and to the shared index.
+   *
+   * @param participantId the participant, e.g. {@code aiWitness}
+   * @param role the API role, {@code user} or {@code assistant}
+   * @param speaker the name shown in the chat
+   * @param content what was said
+   * @return the new entry
+   */
+  public synchronized ConversationEntry append(
+      String participantId, String role, String speaker, String content) {
+    ConversationEntry entry =
+        new ConversationEntry(
+            nextSequence++, participantId, role, speaker, content, System.currentTimeMillis());
+    participantEntries.computeIfAbsent(participantId, id -> new EntryRing(capacity)).add(entry);
+    sharedEntries.add(entry);
+    return entry;
+  }
+
+  /**
+   * Gets a participant's whole conversation, for display.
+   *
+   * @param participantId the participant
+   * @return a copy of the entries held for the participant, oldest first
+   */
+  public synchronized List<ConversationEntry> history(String participantId) {
+    EntryRing ring = participantEntries.get(participantId);
+    List<ConversationEntry> copy = new ArrayList<>(ring == null ? 0 : ring.size());
+    forEachRecent(ring, Integer.MAX_VALUE, copy::add);
+    return copy;
+  }
+
+  /**
+   * Visits a participant's most recent entries, oldest first.
+   *
+   * @param participantId the participant
+   * @param limit the maximum number of entries to visit
+   * @param visitor receives each entry
+   */
+  public synchronized void forEachRecent(
+      String participantId, int limit, Consumer<ConversationEntry> visitor) {
+    forEachRecent(participantEntries.get(participantId), limit, visitor);
+  }
+
+  /**
+   * Visits the most recent entries across all participants, oldest first.
+   *
+   * @param limit the maximum number of entries to visit
+   * @param visitor receives each entry
+   */
+  public synchronized void forEachRecentShared(int limit, Consumer<ConversationEntry> visitor) {
+    forEachRecent(sharedEntries, limit, visitor);
+  }
+
+  /**
+   * Visits the context of a request to a participant: their most recent entries merged with the
+   * most recent entries across all participants. Both buffers are already ordered by sequence
+   * number, so they are merged in one pass and an entry found in both is visited once, without
+   * comparing contents.
+   *
+   * @param participantId the participant
+   * @param participantLimit the maximum number of the participant's own entries
+   * @param sharedLimit the maximum number of shared entries
+   * @param visitor receives each entry, oldest first
+   */
+  public synchronized void forEachInContext(
+      String participantId,
+      int participantLimit,
+      int sharedLimit,
+      Consumer<ConversationEntry> visitor) {
+    EntryRing own = participantEntries.get(participantId);
+    int ownSize = own == null ? 0 : own.size();
+    int i = Math.max(0, ownSize - participantLimit);
+    int j = Math.max(0, sharedEntries.size() - sharedLimit);
+
+    while (i < ownSize || j < sharedEntries.size()) {
+      ConversationEntry next;
+      if (j == sharedEntries.size()) {
+        next = own.get(i++);
+      } else if (i == ownSize) {
+        next = sharedEntries.get(j++);
+      } else {
+        ConversationEntry ownEntry = own.get(i);
+        ConversationEntry sharedEntry = sharedEntries.get(j);
+        if (ownEntry.getSequence() < sharedEntry.getSequence()) {
+          next = ownEntry;
+          i++;
+        } else if (ownEntry.getSequence() > sharedEntry.getSequence()) {
+          next = sharedEntry;
+          j++;
+        } else {
+          next = ownEntry; // the same entry is in both buffers
+          i++;
+          j++;
+        }
+      }
+      visitor.accept(next);
+    }
+  }
+
+  /**
+   * Gets the number of entries held for a participant.
+   *
+   * @param participantId the participant
+   * @return the number of entries
+   */
+  public synchronized int size(String participantId) {
+    EntryRing ring = participantEntries.get(participantId);
+    return ring == null ? 0 : ring.size();
+  }
+
+  /**
+   * Gets the sequence number of the newest entry of any participant. It changes whenever a line is
+   * added, so it identifies the history a request was built from.
+   *
+   * @return the newest sequence number, or -1 if nothing has been said yet
+   */
+  public synchronized long lastSequence() {
+    return nextSequence - 1;
+  }
+
+  /** Forgets every conversation, for a new game. */
+  public synchronized void clear() {
+    participantEntries.clear();
+    sharedEntries = new EntryRing(capacity);
+  }
+
+  private static void forEachRecent(
+      EntryRing ring, int limit, Consumer<ConversationEntry> visitor) {
+    if (ring == null) {
+      return;
+    }
+    for (int i = Math.max(0, ring.size() - limit); i < ring.size(); i++) {
+      visitor.accept(ring.get(i));
+    }
+  }
+}
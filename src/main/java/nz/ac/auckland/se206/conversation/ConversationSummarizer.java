@@ -0,0 +1,175 @@
+package nz.ac.auckland.se206.conversation;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import nz.ac.auckland.apiproxy.chat.openai.ChatCompletionRequest;
+import nz.ac.auckland.apiproxy.chat.openai.ChatCompletionResult;
+import nz.ac.auckland.apiproxy.config.ApiProxyConfig;
+import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+import nz.ac.auckland.se206.BackgroundExecutor;
+import nz.ac.auckland.se206.BackgroundExecutor.Category;
+import nz.ac.auckland.se206.prompts.PromptEngineering;
+
+/**
+ * Singleton that compresses the older part of each participant's conversation into a short
+ * summary, so long interrogations keep their long-range context without growing the prompt. Once
+ * a participant has more than {@code summary.threshold} unsummarized entries (default 12), all but
+ * the newest {@code summary.keepRecent} (default 6) are folded into the participant's summary by a
+ * cheap model on the background summary executor. Chat requests send the summary in place of the
+ * entries it covers.
+ */
+public class ConversationSummarizer {
+
+  /** A participant's summary and the newest entry it covers. */
+  public static class Summary {
+    private final String text;
+    private final long coversThroughSequence;
+
+    private Summary(String text, long coversThroughSequence) {
+      this.text = text;
+      this.coversThroughSequence = coversThroughSequence;
+    }
+
+    public String getText() {
+      return text;
+    }
+
+    /** Entries of the participant with a sequence number up to this one are in the summary. */
+    public long getCoversThroughSequence() {
+      return coversThroughSequence;
+    }
+  }
+
+  private static final long SUMMARY_TIMEOUT_SECONDS = 30;
+
+  private static ConversationSummarizer instance;
+
+  public static synchronized ConversationSummarizer getInstance() {
+    if (instance == null) {
+      instance =
+          new ConversationSummarizer(
+              Integer.getInteger("summary.threshold", 12),
+              Integer.getInteger("summary.keepRecent", 6));
+    }
+    return instance;
+  }
+
+  private final int threshold;
+  private final int keepRecent;
+  private final Map<String, Summary> summaries = new HashMap<>();
+  private final Set<String> inProgress = new HashSet<>();
+  // Bumped by clear so summaries finishing after a reset are discarded
+  private long generation;
+
+  private ConversationSummarizer(int threshold, int keepRecent) {
+    this.threshold = threshold;
+    // Keeping more than the threshold would leave nothing to summarize
+    this.keepRecent = Math.min(keepRecent, threshold);
+  }
+
+  /**
+   * Gets the current summary of a participant's older entries.
+   *
+   * @param participantId the participant
+   * @return the summary, or null if nothing has been summarized yet
+   */
+  public synchronized Summary getSummary(String participantId) {
+    return summaries.get(participantId);
+  }
+
+  /**
+   * Starts summarizing a participant's older entries in the background if there are enough of
+   * them and no summary of that participant is already being made.
+   *
+   * @param participantId the participant
+   * @param participantName the participant's display name, used in the summary
+   */
+  public void summarizeIfNeeded(String participantId, String participantName) {
+    List<ConversationEntry> history = ConversationStore.getInstance().history(participantId);
+    long startGeneration;
+    Summary previous;
+    synchronized (this) {
+      previous = summaries.get(participantId);
+      long covered = previous == null ? -1 : previous.coversThroughSequence;
+      int unsummarized = 0;
+      for (ConversationEntry entry : history) {
+        if (entry.getSequence() > covered) {
+          unsummarized++;
+        }
+      }
+      if (unsummarized <= threshold || !inProgress.add(participantId)) {
+        return;
+      }
+      startGeneration = generation;
+    }
+
+    // Fold everything newer than the previous summary except the most recent entries
+    long covered = previous == null ? -1 : previous.coversThroughSequence;
+    List<ConversationEntry> toFold = history.subList(0, history.size() - keepRecent);
+    StringBuilder transcript = new StringBuilder();
+    if (previous != null) {
+      transcript.append("Notes so far: ").append(previous.text).append("\n\n");
+    }
+    transcript.append("Newest part of the conversation:\n");
+    for (ConversationEntry entry : toFold) {
+      if (entry.getSequence() > covered) {
+        transcript.append(entry.toDisplayString()).append('\n');
+      }
+    }
+    long coversThrough = toFold.get(toFold.size() - 1).getSequence();
+
+    try {
+      createSummaryRequest(participantName, transcript.toString())
+          .executeAsync(BackgroundExecutor.getInstance().executor(Category.SUMMARY))
+          .orTimeout(SUMMARY_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+          .whenComplete(
+              (result, error) ->
+                  finish(participantId, startGeneration, result, error, coversThrough));
+    } catch (ApiProxyException e) {
+      finish(participantId, startGeneration, null, e, coversThrough);
+    }
+  }
+
+  /** Forgets every summary, for a new game. */
+  public synchronized void clear() {
+    summaries.clear();
+    inProgress.clear();
+    generation++;
+  }
+
+  private synchronized void finish(
+      String participantId,
+      long startGeneration,
+      ChatCompletionResult result,
+      Throwable error,
+      long coversThrough) {
+    if (startGeneration != generation) {
+      return;
+    }
+    inProgress.remove(participantId);
+    if (error != null || result == null || result.getNumChoices() == 0) {
+      System.err.println("WARNING: Could not summarize " + participantId + ": " + error);
+      return;
+    }
+    String text = result.getChoice(0).getChatMessage().getContent().trim();
+    summaries.put(participantId, new Summary(text, coversThrough));
+  }
+
+  private ChatCompletionRequest createSummaryRequest(String speaker, String transcript)
+      throws ApiProxyException {
+    Map<String, String> data = new HashMap<>();
+    data.put("participant", speaker);
+    return new ChatCompletionRequest(ApiProxyConfig.readConfig())
+        .setN(1)
+        .setTemperature(0.2)
+        .setTopP(0.5)
+        .setModel(ChatCompletionRequest.Model.GPT_4_1_NANO)
+        .setMaxTokens(160)
+        .addMessage("system", PromptEngineering.getPrompt("summary.txt", data))
+        .addMessage("user", transcript);
+  }
+}
@@ -0,0 +1,35 @@
+package nz.ac.auckland.se206.conversation;
+
+/** Fixed-capacity ring of entries, oldest first; once full, each new entry replaces the oldest. */
+class EntryRing {
+
+  private final ConversationEntry[] entries;
+  private int start;
+  private int size;
+
+  EntryRing(int capacity) {
+    entries = new ConversationEntry[capacity];
+  }
+
+  void add(ConversationEntry entry) {
+    if (size < entries.length) {
+      entries[(start + size) % entries.length] = entry;
+      size++;
+    } else {
+      entries[start] = entry;
+      start = (start + 1) % entries.length;
+    }
+  }
+
+  /** Gets the entry at a position, where 0 is the oldest entry still held. */
+  ConversationEntry get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return entries[(start + index) % entries.length];
+  }
+
+  int size() {
+    return size;
+  }
+}
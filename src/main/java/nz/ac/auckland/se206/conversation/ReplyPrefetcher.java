@@ -0,0 +1,261 @@
+package nz.ac.auckland.se206.conversation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import nz.ac.auckland.apiproxy.chat.openai.ChatMessage;
+
+/**
+ * Singleton that asks each participant the questions players usually open with while the player is
+ * still watching the participant's flashback, so the reply to a matching first question can be
+ * shown straight away. A question counts as matching an opener when their words overlap by at least
+ * {@code prefetch.matchThreshold} (default 0.6, as the share of the words in either that are in
+ * both), ignoring case, punctuation and filler words.
+ *
+ * <p>The openers of each participant are read from {@code /prompts/openers.properties}, or from
+ * the file named by {@code prefetch.openers}, as {@code participantId=question|question|...}.
+ * Replies are only used for the conversation context they were made in, and are dropped after
+ * {@code prefetch.ttlSeconds} (default 120). Prefetching can be turned off with {@code
+ * -Dprefetch.enabled=false}.
+ */
+public class ReplyPrefetcher {
+
+  private static final String OPENERS = "/prompts/openers.properties";
+  private static final Set<String> FILLER_WORDS =
+      Set.of(
+          "a", "an", "the", "to", "of", "and", "so", "is", "are", "was", "were", "do", "does",
+          "did", "can", "could", "would", "please", "just");
+
+  private static ReplyPrefetcher instance;
+
+  public static synchronized ReplyPrefetcher getInstance() {
+    if (instance == null) {
+      instance =
+          new ReplyPrefetcher(
+              Boolean.parseBoolean(System.getProperty("prefetch.enabled", "true"))
+                  ? readOpeners()
+                  : Map.of(),
+              Long.getLong("prefetch.ttlSeconds", 120) * 1000,
+              Double.parseDouble(System.getProperty("prefetch.matchThreshold", "0.6")),
+              System::currentTimeMillis);
+    }
+    return instance;
+  }
+
+  private static Map<String, List<String>> readOpeners() {
+    Properties properties = new Properties();
+    String file = System.getProperty("prefetch.openers");
+    try (Reader reader =
+        file != null
+            ? Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)
+            : openResource()) {
+      if (reader != null) {
+        properties.load(reader);
+      }
+    } catch (IOException e) {
+      System.err.println("Opening questions unreadable, not prefetching replies: " + e);
+    }
+    Map<String, List<String>> openers = new HashMap<>();
+    for (String participantId : properties.stringPropertyNames()) {
+      List<String> questions = new ArrayList<>();
+      for (String question : properties.getProperty(participantId).split("\\|")) {
+        if (!question.isBlank()) {
+          questions.add(question.trim());
+        }
+      }
+      openers.put(participantId, List.copyOf(questions));
+    }
+    return openers;
+  }
+
+  private static Reader openResource() {
+    InputStream stream = ReplyPrefetcher.class.getResourceAsStream(OPENERS);
+    return stream == null ? null : new InputStreamReader(stream, StandardCharsets.UTF_8);
+  }
+
+  private final Map<String, List<String>> openers;
+  private final long ttlMillis;
+  private final double matchThreshold;
+  private final LongSupplier clock;
+  private final List<Prefetched> prefetched = new ArrayList<>();
+  private long hits;
+  private long misses;
+
+  ReplyPrefetcher(
+      Map<String, List<String>> openers,
+      long ttlMillis,
+      double matchThreshold,
+      LongSupplier clock) {
+    this.openers = openers;
+    this.ttlMillis = ttlMillis;
+    this.matchThreshold = matchThreshold;
+    this.clock = clock;
+  }
+
+  /**
+   * Starts asking a participant its opening questions, skipping those already asked in the same
+   * context. The requests are started on the calling thread.
+   *
+   * @param participantId the participant
+   * @param context identifies everything besides the question that the reply depends on, e.g. the
+   *     system prompt and the newest conversation entry
+   * @param ask starts a request for a question, completing with the reply or null if it failed
+   */
+  public void prefetch(
+      String participantId, String context, Function<String, CompletableFuture<ChatMessage>> ask) {
+    for (String question : openers.getOrDefault(participantId, List.of())) {
+      synchronized (this) {
+        removeExpired();
+        if (find(participantId, context, question) != null) {
+          continue;
+        }
+      }
+      CompletableFuture<ChatMessage> reply = ask.apply(question);
+      synchronized (this) {
+        prefetched.add(
+            new Prefetched(participantId, context, question, reply, clock.getAsLong()));
+      }
+    }
+  }
+
+  /**
+   * Takes the prefetched reply to a question if one has arrived for a matching opener in the same
+   * context. Replies still on their way are not waited for.
+   *
+   * @param participantId the participant asked
+   * @param context the context the question is asked in, as passed to {@link #prefetch}
+   * @param question what the player asked
+   * @return the reply, which is then forgotten, or null if there is none
+   */
+  public synchronized ChatMessage take(String participantId, String context, String question) {
+    removeExpired();
+    Set<String> words = wordsOf(question);
+    Prefetched best = null;
+    double bestSimilarity = matchThreshold;
+    for (Prefetched candidate : prefetched) {
+      if (candidate.participantId.equals(participantId)
+          && candidate.context.equals(context)
+          && candidate.reply.isDone()
+          && !candidate.reply.isCompletedExceptionally()
+          && candidate.reply.join() != null) {
+        double similarity = similarity(words, candidate.words);
+        if (similarity >= bestSimilarity) {
+          best = candidate;
+          bestSimilarity = similarity;
+        }
+      }
+    }
+    if (best == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    prefetched.remove(best);
+    return best.reply.join();
+  }
+
+  /** Forgets every prefetched reply, for a new game. */
+  public synchronized void clear() {
+    prefetched.clear();
+  }
+
+  /**
+   * Describes the prefetcher's counters on one line, for logging.
+   *
+   * @return a summary such as {@code prefetched=3, hits=1, misses=2}
+   */
+  public synchronized String describe() {
+    return String.format("prefetched=%d, hits=%d, misses=%d", prefetched.size(), hits, misses);
+  }
+
+  private Prefetched find(String participantId, String context, String question) {
+    for (Prefetched candidate : prefetched) {
+      if (candidate.participantId.equals(participantId)
+          && candidate.context.equals(context)
+          && candidate.question.equals(question)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  private void removeExpired() {
+    long now = clock.getAsLong();
+    Iterator<Prefetched> iterator = prefetched.iterator();
+    while (iterator.hasNext()) {
+      if (now - iterator.next().createdMillis > ttlMillis) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Measures how alike two questions are by their words.
+   *
+   * @param first one question
+   * @param second the other question
+   * @return the shared words as a share of all words of both, from 0 to 1
+   */
+  static double similarity(String first, String second) {
+    return similarity(wordsOf(first), wordsOf(second));
+  }
+
+  private static double similarity(Set<String> first, Set<String> second) {
+    if (first.isEmpty() || second.isEmpty()) {
+      return 0;
+    }
+    Set<String> shared = new HashSet<>(first);
+    shared.retainAll(second);
+    return shared.size() / (double) (first.size() + second.size() - shared.size());
+  }
+
+  private static Set<String> wordsOf(String text) {
+    Set<String> words = new HashSet<>();
+    for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+      if (!word.isEmpty() && !FILLER_WORDS.contains(word)) {
+        words.add(word);
+      }
+    }
+    return words;
+  }
+
+  /** A reply requested ahead of time. */
+  private static class Prefetched {
+    private final String participantId;
+    private final String context;
+    private final String question;
+    private final Set<String> words;
+    private final CompletableFuture<ChatMessage> reply;
+    private final long createdMillis;
+
+    private Prefetched(
+        String participantId,
+        String context,
+        String question,
+        CompletableFuture<ChatMessage> reply,
+        long createdMillis) {
+      this.participantId = participantId;
+      this.context = context;
+      this.question = question;
+      this.words = wordsOf(question);
+      this.reply = reply;
+      this.createdMillis = createdMillis;
+    }
+  }
+}
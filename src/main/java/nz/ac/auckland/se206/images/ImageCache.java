@@ -0,0 +1,218 @@
+package nz.ac.auckland.se206.images;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import javafx.scene.image.Image;
+import nz.ac.auckland.se206.BackgroundExecutor;
+import nz.ac.auckland.se206.BackgroundExecutor.Category;
+
+/**
+ * In-memory cache of decoded images, keyed by resource path and target size. Decoding a large PNG
+ * takes tens of milliseconds, so an image that is shown again, e.g. a flashback slide or a scanner
+ * state, is decoded only once, and images that will be needed soon can be decoded ahead of time on
+ * a background thread with {@link #prefetch}.
+ *
+ * <p>Images requested with a target size are read from the smallest {@link ImageVariants
+ * build-time variant} that is big enough and decoded straight to that size (keeping their aspect
+ * ratio), so a 1536x1024 slide shown at 600x400 takes a sixth of the memory. The cache holds at
+ * most {@code images.cache.maxBytes} of decoded pixels (default 128 MB), evicting the least
+ * recently used images first.
+ */
+public class ImageCache {
+
+  private static final long DEFAULT_MAX_BYTES = 128L * 1024 * 1024;
+  // Decoded images are stored as 32-bit ARGB
+  private static final int BYTES_PER_PIXEL = 4;
+
+  private static ImageCache instance;
+
+  public static synchronized ImageCache getInstance() {
+    if (instance == null) {
+      instance = new ImageCache(Long.getLong("images.cache.maxBytes", DEFAULT_MAX_BYTES));
+    }
+    return instance;
+  }
+
+  private final long maxBytes;
+  // Least to most recently used
+  private final LinkedHashMap<String, Image> images = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, CompletableFuture<Image>> pending = new HashMap<>();
+  private long totalBytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  ImageCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Gets an image at its natural size.
+   *
+   * @param path the image's resource path, e.g. {@code /images/doc.png}
+   * @return the image, or null if there is no such resource
+   */
+  public Image get(String path) {
+    return get(path, 0, 0);
+  }
+
+  /**
+   * Gets an image scaled to fit within a size, decoding it on the calling thread unless it is
+   * cached or already being decoded in the background.
+   *
+   * @param path the image's resource path, e.g. {@code /images/doc.png}
+   * @param width the width to fit the image into, or 0 for its natural width
+   * @param height the height to fit the image into, or 0 for its natural height
+   * @return the image, or null if there is no such resource
+   */
+  public Image get(String path, double width, double height) {
+    String key = keyOf(path, width, height);
+    CompletableFuture<Image> decoding;
+    synchronized (this) {
+      Image image = images.get(key);
+      if (image != null) {
+        hits++;
+        return image;
+      }
+      misses++;
+      decoding = pending.get(key);
+    }
+    if (decoding != null) {
+      try {
+        return decoding.join();
+      } catch (CompletionException e) {
+        // Fall through and try again on this thread
+      }
+    }
+    Image image = decode(path, width, height);
+    if (image != null) {
+      put(key, image);
+    }
+    return image;
+  }
+
+  /**
+   * Starts decoding an image in the background if it is not cached or being decoded already.
+   *
+   * @param path the image's resource path
+   * @param width the width to fit the image into, or 0 for its natural width
+   * @param height the height to fit the image into, or 0 for its natural height
+   * @return the image once it is decoded, completed with null if there is no such resource
+   */
+  public CompletableFuture<Image> prefetch(String path, double width, double height) {
+    String key = keyOf(path, width, height);
+    CompletableFuture<Image> decoding;
+    synchronized (this) {
+      Image image = images.get(key);
+      if (image != null) {
+        return CompletableFuture.completedFuture(image);
+      }
+      decoding = pending.get(key);
+      if (decoding != null) {
+        return decoding;
+      }
+      decoding =
+          CompletableFuture.supplyAsync(
+              () -> decode(path, width, height),
+              BackgroundExecutor.getInstance().executor(Category.IMAGE));
+      pending.put(key, decoding);
+    }
+    decoding.whenComplete(
+        (image, error) -> {
+          synchronized (this) {
+            pending.remove(key);
+          }
+          if (image != null) {
+            put(key, image);
+          }
+        });
+    return decoding;
+  }
+
+  /**
+   * Gets an image scaled to fit within a size only if it is already decoded.
+   *
+   * @param path the image's resource path
+   * @param width the width the image was fitted into
+   * @param height the height the image was fitted into
+   * @return the cached image, or null if it is not cached
+   */
+  public synchronized Image getIfCached(String path, double width, double height) {
+    Image image = images.get(keyOf(path, width, height));
+    if (image != null) {
+      hits++;
+    }
+    return image;
+  }
+
+  /** Removes every image; the counters are kept. */
+  public synchronized void clear() {
+    images.clear();
+    totalBytes = 0;
+  }
+
+  /**
+   * Describes the cache's counters on one line, for logging.
+   *
+   * @return a summary such as {@code images=4, bytes=5120000, hits=7, misses=4, evictions=0}
+   */
+  public synchronized String describe() {
+    return String.format(
+        "images=%d, bytes=%d, hits=%d, misses=%d, evictions=%d",
+        images.size(), totalBytes, hits, misses, evictions);
+  }
+
+  private synchronized void put(String key, Image image) {
+    long bytes = sizeOf(image);
+    if (bytes > maxBytes) {
+      return;
+    }
+    Image previous = images.put(key, image);
+    if (previous != null) {
+      totalBytes -= sizeOf(previous);
+    }
+    totalBytes += bytes;
+
+    Iterator<Image> iterator = images.values().iterator();
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      totalBytes -= sizeOf(iterator.next());
+      iterator.remove();
+      evictions++;
+    }
+  }
+
+  private static String keyOf(String path, double width, double height) {
+    return path + "@" + (int) width + "x" + (int) height;
+  }
+
+  private static long sizeOf(Image image) {
+    return (long) image.getWidth() * (long) image.getHeight() * BYTES_PER_PIXEL;
+  }
+
+  // Decodes synchronously on the calling thread, which is safe off the FX thread. Reads the
+  // smallest build-time variant that is big enough, if there is one
+  private static Image decode(String path, double width, double height) {
+    String resource = ImageVariants.getInstance().resolve(path, width, height);
+    try (InputStream stream = ImageCache.class.getResourceAsStream(resource)) {
+      if (stream == null) {
+        System.err.println("Image not found: " + path);
+        return null;
+      }
+      Image image = new Image(stream, width, height, true, true);
+      if (image.isError()) {
+        System.err.println("Could not decode image " + path + ": " + image.getException());
+        return null;
+      }
+      return image;
+    } catch (IOException e) {
+      System.err.println("Could not read image " + path + ": " + e.getMessage());
+      return null;
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package nz.ac.auckland.se206.images;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Build step that writes display-sized copies of the game's images next to the compiled classes,
+ * with a manifest that {@link ImageVariants} reads at runtime. The source images are far larger
+ * than the views that show them, so loading a variant instead reads and decodes a fraction of the
+ * bytes.
+ *
+ * <p>Each image gets one variant per bounding box that is smaller than the image, scaled to fit the
+ * box with its aspect ratio kept. Opaque images are written as JPEG, images with transparency as
+ * PNG. Run by Maven in the {@code process-classes} phase as:
+ *
+ * <pre>
+ * ImageVariantGenerator &lt;source images dir&gt; &lt;classes dir&gt; [800x600,600x400,...]
+ * </pre>
+ */
+public class ImageVariantGenerator {
+
+  static final String DEFAULT_BOXES = "800x600,600x400,320x360";
+  private static final float JPEG_QUALITY = 0.85f;
+  // Manifest key recording the boxes the variants were made for, so changing them regenerates all
+  private static final String BOXES_KEY = "boxes";
+
+  /**
+   * Generates the variants.
+   *
+   * @param args the source images directory, the classes directory and optionally the bounding
+   *     boxes
+   * @throws IOException if an image cannot be read or written
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: ImageVariantGenerator <source images dir> <classes dir> [boxes]");
+      System.exit(2);
+    }
+    System.setProperty("java.awt.headless", "true");
+    List<int[]> boxes = parseBoxes(args.length > 2 ? args[2] : DEFAULT_BOXES);
+    int written = generate(Paths.get(args[0]), Paths.get(args[1]), boxes);
+    System.out.println("Image variants: " + written + " written");
+  }
+
+  /**
+   * Writes the variants of every image in a directory and the manifest. Images that have not
+   * changed since the last manifest was written with the same boxes are skipped without decoding.
+   *
+   * @param sourceDir the directory of the source images, served as {@code /images/}
+   * @param classesDir the root of the classpath the variants are written into
+   * @param boxes the bounding boxes as {width, height} pairs
+   * @return the number of variant files written
+   * @throws IOException if an image cannot be read or written
+   */
+  static int generate(Path sourceDir, Path classesDir, List<int[]> boxes) throws IOException {
+    Path outputDir = classesDir.resolve(ImageVariants.VARIANT_DIR.substring(1));
+    Files.createDirectories(outputDir);
+    List<Path> sources;
+    try (Stream<Path> files = Files.walk(sourceDir)) {
+      sources = files.filter(ImageVariantGenerator::isSourceImage).sorted().toList();
+    }
+
+    String boxList = formatBoxes(boxes);
+    Path manifestFile = classesDir.resolve(ImageVariants.MANIFEST.substring(1));
+    Properties previous = new Properties();
+    FileTime previousTime = FileTime.fromMillis(0);
+    if (Files.exists(manifestFile)) {
+      try (Reader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+        previous.load(reader);
+      }
+      if (boxList.equals(previous.getProperty(BOXES_KEY))) {
+        previousTime = Files.getLastModifiedTime(manifestFile);
+      }
+    }
+
+    int written = 0;
+    TreeMap<String, String> manifest = new TreeMap<>();
+    for (Path source : sources) {
+      String relative = sourceDir.relativize(source).toString().replace('\\', '/');
+      String key = "/images/" + relative;
+      String previousEntry = previous.getProperty(key);
+      if (previousEntry != null
+          && Files.getLastModifiedTime(source).compareTo(previousTime) < 0
+          && variantsExist(classesDir, previousEntry)) {
+        manifest.put(key, previousEntry);
+        continue;
+      }
+
+      BufferedImage image = ImageIO.read(source.toFile());
+      if (image == null) {
+        System.err.println("Image variants: cannot decode " + source + ", skipped");
+        continue;
+      }
+      boolean opaque = isOpaque(image);
+      String extension = opaque ? ".jpg" : ".png";
+      String baseName = relative.substring(0, relative.lastIndexOf('.')).replace('/', '_');
+
+      StringBuilder entry = new StringBuilder();
+      entry.append(image.getWidth()).append('x').append(image.getHeight());
+      List<String> sizes = new ArrayList<>();
+      for (int[] box : boxes) {
+        double scale =
+            Math.min((double) box[0] / image.getWidth(), (double) box[1] / image.getHeight());
+        if (scale >= 1) {
+          continue;
+        }
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        String size = width + "x" + height;
+        if (sizes.contains(size)) {
+          continue;
+        }
+        sizes.add(size);
+
+        String fileName = baseName + "-" + size + extension;
+        write(scale(image, width, height, opaque), outputDir.resolve(fileName), opaque);
+        written++;
+        entry.append(';').append(size).append('@').append(ImageVariants.VARIANT_DIR);
+        entry.append('/').append(fileName);
+      }
+      manifest.put(key, entry.toString());
+    }
+
+    // Written without Properties.store so the file has no timestamp and builds are reproducible
+    try (Writer writer = Files.newBufferedWriter(manifestFile, StandardCharsets.UTF_8)) {
+      writer.write("# Generated by ImageVariantGenerator: source=WxH;variant=WxH@path;...\n");
+      writer.write(BOXES_KEY + "=" + boxList + "\n");
+      for (var line : manifest.entrySet()) {
+        writer.write(line.getKey() + "=" + line.getValue() + "\n");
+      }
+    }
+    return written;
+  }
+
+  private static boolean variantsExist(Path classesDir, String entry) {
+    String[] parts = entry.split(";");
+    for (int i = 1; i < parts.length; i++) {
+      String path = parts[i].substring(parts[i].indexOf('@') + 1);
+      if (!Files.exists(classesDir.resolve(path.substring(1)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String formatBoxes(List<int[]> boxes) {
+    StringBuilder formatted = new StringBuilder();
+    for (int[] box : boxes) {
+      if (formatted.length() > 0) {
+        formatted.append(',');
+      }
+      formatted.append(box[0]).append('x').append(box[1]);
+    }
+    return formatted.toString();
+  }
+
+  static List<int[]> parseBoxes(String boxes) {
+    List<int[]> parsed = new ArrayList<>();
+    for (String box : boxes.split(",")) {
+      String[] size = box.trim().split("x");
+      parsed.add(new int[] {Integer.parseInt(size[0]), Integer.parseInt(size[1])});
+    }
+    return parsed;
+  }
+
+  private static boolean isSourceImage(Path path) {
+    String name = path.getFileName().toString();
+    // Skips .gitkeep and the like, and any variants left in the source tree
+    return Files.isRegularFile(path)
+        && !name.startsWith(".")
+        && name.toLowerCase().endsWith(".png")
+        && !path.toString().replace('\\', '/').contains(ImageVariants.VARIANT_DIR + "/");
+  }
+
+  private static boolean isOpaque(BufferedImage image) {
+    if (!image.getColorModel().hasAlpha()) {
+      return true;
+    }
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        if ((image.getRGB(x, y) >>> 24) != 0xff) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // Halves the image until it is within twice the target, then scales the rest of the way in one
+  // bicubic pass; a single large downscale would skip most source pixels and look grainy
+  private static BufferedImage scale(BufferedImage image, int width, int height, boolean opaque) {
+    int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+    BufferedImage current = image;
+    while (current.getWidth() / 2 >= width && current.getHeight() / 2 >= height) {
+      current = draw(current, current.getWidth() / 2, current.getHeight() / 2, type);
+    }
+    return draw(current, width, height, type);
+  }
+
+  private static BufferedImage draw(BufferedImage image, int width, int height, int type) {
+    BufferedImage scaled = new BufferedImage(width, height, type);
+    Graphics2D graphics = scaled.createGraphics();
+    try {
+      graphics.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+      graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      graphics.drawImage(image, 0, 0, width, height, null);
+    } finally {
+      graphics.dispose();
+    }
+    return scaled;
+  }
+
+  private static void write(BufferedImage image, Path target, boolean jpeg) throws IOException {
+    if (!jpeg) {
+      ImageIO.write(image, "png", target.toFile());
+      return;
+    }
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    param.setCompressionQuality(JPEG_QUALITY);
+    Files.deleteIfExists(target);
+    try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+      writer.setOutput(output);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+  }
+}
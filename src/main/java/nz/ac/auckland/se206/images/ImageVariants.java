@@ -0,0 +1,128 @@
+package nz.ac.auckland.se206.images;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Index of the display-sized image variants written at build time by {@link
+ * ImageVariantGenerator}. Given the size an image will be shown at, it picks the smallest variant
+ * that still has at least as many pixels as the view, so nothing looks blurrier than before.
+ *
+ * <p>When the manifest is missing, e.g. when running from an IDE without the Maven build step,
+ * every image resolves to its original.
+ */
+public class ImageVariants {
+
+  static final String VARIANT_DIR = "/images/variants";
+  static final String MANIFEST = VARIANT_DIR + "/manifest.properties";
+
+  private static ImageVariants instance;
+
+  public static synchronized ImageVariants getInstance() {
+    if (instance == null) {
+      Properties manifest = new Properties();
+      try (InputStream stream = ImageVariants.class.getResourceAsStream(MANIFEST)) {
+        if (stream != null) {
+          manifest.load(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        }
+      } catch (IOException e) {
+        System.err.println("Image variant manifest unreadable, using originals: " + e);
+      }
+      instance = new ImageVariants(manifest);
+      System.out.println("DEBUG: Image variants for " + instance.sources.size() + " images");
+    }
+    return instance;
+  }
+
+  private final Map<String, Source> sources = new HashMap<>();
+
+  ImageVariants(Properties manifest) {
+    for (String path : manifest.stringPropertyNames()) {
+      if (path.startsWith("/")) {
+        sources.put(path, Source.parse(manifest.getProperty(path)));
+      }
+    }
+  }
+
+  /**
+   * Picks the resource to load for an image shown within a size, with its aspect ratio kept.
+   *
+   * @param path the original image's resource path
+   * @param width the width the image is fitted into, or 0 if not constrained
+   * @param height the height the image is fitted into, or 0 if not constrained
+   * @return the resource path of the best variant, or the original path if none is smaller
+   */
+  public String resolve(String path, double width, double height) {
+    Source source = sources.get(path);
+    if (source == null || (width <= 0 && height <= 0)) {
+      return path;
+    }
+    double scale =
+        Math.min(
+            width > 0 ? width / source.width : Double.MAX_VALUE,
+            height > 0 ? height / source.height : Double.MAX_VALUE);
+    double shownWidth = source.width * Math.min(1, scale);
+    double shownHeight = source.height * Math.min(1, scale);
+    for (Variant variant : source.variants) {
+      // Half a pixel of slack for the rounding done when the variant was written
+      if (variant.width >= shownWidth - 0.5 && variant.height >= shownHeight - 0.5) {
+        return variant.path;
+      }
+    }
+    return path;
+  }
+
+  /** An original image's size and its variants, smallest first. */
+  private static class Source {
+    private final int width;
+    private final int height;
+    private final List<Variant> variants;
+
+    private Source(int width, int height, List<Variant> variants) {
+      this.width = width;
+      this.height = height;
+      this.variants = variants;
+    }
+
+    // Parses "WxH;WxH@path;WxH@path"
+    private static Source parse(String entry) {
+      String[] parts = entry.split(";");
+      int[] size = parseSize(parts[0]);
+      List<Variant> variants = new ArrayList<>();
+      for (int i = 1; i < parts.length; i++) {
+        int at = parts[i].indexOf('@');
+        int[] variantSize = parseSize(parts[i].substring(0, at));
+        variants.add(new Variant(variantSize[0], variantSize[1], parts[i].substring(at + 1)));
+      }
+      variants.sort(Comparator.comparingInt(variant -> variant.width));
+      return new Source(size[0], size[1], Collections.unmodifiableList(variants));
+    }
+
+    private static int[] parseSize(String size) {
+      String[] parts = size.trim().split("x");
+      return new int[] {Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+  }
+
+  /** A variant written at build time. */
+  private static class Variant {
+    private final int width;
+    private final int height;
+    private final String path;
+
+    private Variant(int width, int height, String path) {
+      this.width = width;
+      this.height = height;
+      this.path = path;
+    }
+  }
+}
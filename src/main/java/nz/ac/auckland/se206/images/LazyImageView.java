@@ -0,0 +1,130 @@
+package nz.ac.auckland.se206.images;
+
+import java.util.concurrent.CompletableFuture;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+/**
+ * Image view for FXML that decodes its image off the FX thread. Setting {@link #setSource(String)
+ * source} shows a low-resolution placeholder straight away, decoded from the smallest build-time
+ * variant, and swaps in the full image once it has been decoded in the background through the
+ * {@link ImageCache}, so loading a view never waits on a full PNG decode.
+ *
+ * <p>The image is decoded to the view's fit size, so {@code source} must come after {@code
+ * fitWidth} and {@code fitHeight} in the FXML element, whose attributes are applied in order:
+ *
+ * <pre>
+ * &lt;LazyImageView fitHeight="600.0" fitWidth="800.0" source="/images/trialroom.png" /&gt;
+ * </pre>
+ *
+ * <p>Starting the game with {@code -Dimages.backgroundLoading=false} decodes the full image while
+ * the view is loaded instead, as a plain {@code <Image>} would.
+ */
+public class LazyImageView extends ImageView {
+
+  // Placeholders are decoded at this fraction of the fit size and scaled up by the view
+  private static final int PLACEHOLDER_DIVISOR = 8;
+
+  private static final boolean BACKGROUND_LOADING =
+      Boolean.parseBoolean(System.getProperty("images.backgroundLoading", "true"));
+
+  private String source;
+  private CompletableFuture<Image> loaded = CompletableFuture.completedFuture(null);
+  private volatile long placeholderNanos;
+  private volatile long decodeNanos = -1;
+
+  /**
+   * Gets the resource path of the image shown.
+   *
+   * @return the resource path, e.g. {@code /images/trialroom.png}, or null if none was set
+   */
+  public String getSource() {
+    return source;
+  }
+
+  /**
+   * Shows an image, with a placeholder until it has been decoded. Can be called on any thread
+   * while the view is not yet part of a showing scene, as the FXML loader does.
+   *
+   * @param source the image's resource path, e.g. {@code /images/trialroom.png}
+   */
+  public void setSource(String source) {
+    this.source = source;
+    ImageCache cache = ImageCache.getInstance();
+    double width = getFitWidth();
+    double height = getFitHeight();
+
+    Image cached = cache.getIfCached(source, width, height);
+    if (cached != null) {
+      placeholderNanos = 0;
+      decodeNanos = 0;
+      setImage(cached);
+      loaded = CompletableFuture.completedFuture(cached);
+      return;
+    }
+
+    long start = System.nanoTime();
+    if (!BACKGROUND_LOADING) {
+      Image image = cache.get(source, width, height);
+      placeholderNanos = 0;
+      decodeNanos = System.nanoTime() - start;
+      setImage(image);
+      loaded = CompletableFuture.completedFuture(image);
+      return;
+    }
+
+    Image placeholder =
+        width > 0 && height > 0
+            ? cache.get(source, width / PLACEHOLDER_DIVISOR, height / PLACEHOLDER_DIVISOR)
+            : null;
+    placeholderNanos = System.nanoTime() - start;
+    decodeNanos = -1;
+    setImage(placeholder);
+
+    CompletableFuture<Image> swapped = new CompletableFuture<>();
+    loaded = swapped;
+    cache
+        .prefetch(source, width, height)
+        .whenComplete(
+            (image, error) -> {
+              decodeNanos = System.nanoTime() - start;
+              Platform.runLater(
+                  () -> {
+                    // Leave it if the source or image was changed while decoding, e.g. by code
+                    if (image != null && source.equals(this.source) && getImage() == placeholder) {
+                      setImage(image);
+                    }
+                    swapped.complete(image);
+                  });
+            });
+  }
+
+  /**
+   * Gets the image once the full image is shown, or could not be decoded.
+   *
+   * @return the image, completed on the FX thread with null if it could not be decoded
+   */
+  public CompletableFuture<Image> loaded() {
+    return loaded;
+  }
+
+  /**
+   * Gets how long the thread that set the source was held up, decoding the placeholder.
+   *
+   * @return the time in milliseconds
+   */
+  public double getPlaceholderMillis() {
+    return placeholderNanos / 1e6;
+  }
+
+  /**
+   * Gets how long the full image took to decode, from when the source was set.
+   *
+   * @return the time in milliseconds, or -1 if it is still being decoded
+   */
+  public double getDecodeMillis() {
+    long nanos = decodeNanos;
+    return nanos < 0 ? -1 : nanos / 1e6;
+  }
+}
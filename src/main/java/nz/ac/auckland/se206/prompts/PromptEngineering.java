@@ -54,7 +54,7 @@ public class PromptEngineering {
    * @param data the data to fill into the template
    * @return the filled template string
    */
-  private static String fillTemplate(String template, Map<String, String> data) {
+  static String fillTemplate(String template, Map<String, String> data) {
     for (Map.Entry<String, String> entry : data.entrySet()) {
       template = template.replace("{" + entry.getKey() + "}", entry.getValue());
     }
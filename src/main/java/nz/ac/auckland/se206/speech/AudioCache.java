@@ -0,0 +1,238 @@
+package nz.ac.auckland.se206.speech;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest.Provider;
+import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest.Voice;
+
+/**
+ * Content-addressed on-disk cache of synthesized speech. Each clip is stored as an MP3 file named
+ * after a hash of its text, provider and voice, so a line that has been spoken once can be replayed
+ * without calling the text-to-speech API again. The least recently used clips are deleted once the
+ * cache grows past its size cap.
+ *
+ * <p>The location and size cap can be changed with the system properties {@code tts.cache.dir}
+ * (default {@code ~/.trial-ai/tts-cache}) and {@code tts.cache.maxBytes} (default 64 MB).
+ */
+public class AudioCache {
+
+  private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+  private static final String EXTENSION = ".mp3";
+
+  private static AudioCache instance;
+
+  public static synchronized AudioCache getInstance() {
+    if (instance == null) {
+      String defaultDir =
+          Paths.get(System.getProperty("user.home"), ".trial-ai", "tts-cache").toString();
+      Path dir = Paths.get(System.getProperty("tts.cache.dir", defaultDir));
+      instance = new AudioCache(dir, Long.getLong("tts.cache.maxBytes", DEFAULT_MAX_BYTES));
+    }
+    return instance;
+  }
+
+  /**
+   * Computes the cache key of a clip.
+   *
+   * @param text the spoken text
+   * @param provider the text-to-speech provider
+   * @param voice the provider's voice
+   * @return a hex encoded SHA-256 hash of the three values
+   */
+  public static String keyOf(String text, Provider provider, Voice voice) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(provider.getProviderCode().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(voice.getVoiceCode().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(text.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  private final Path directory;
+  private final long maxBytes;
+  // Key to file size, in least to most recently used order
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes;
+  private boolean usable = true;
+
+  AudioCache(Path directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    try {
+      Files.createDirectories(directory);
+      loadIndex();
+    } catch (IOException e) {
+      System.err.println("TTS cache disabled, cannot use " + directory + ": " + e.getMessage());
+      usable = false;
+    }
+  }
+
+  /**
+   * Opens a cached clip. The file is memory-mapped, so the returned stream reads straight from the
+   * page cache without copying the clip onto the heap first.
+   *
+   * @param key the clip's key from {@link #keyOf}
+   * @return a stream over the MP3 bytes, or null if the clip is not cached
+   */
+  public InputStream open(String key) {
+    Path file;
+    synchronized (this) {
+      if (!usable || entries.get(key) == null) {
+        return null;
+      }
+      file = fileOf(key);
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      // Record the access so the file's age reflects recency after a restart
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      return new ByteBufferInputStream(buffer);
+    } catch (IOException e) {
+      synchronized (this) {
+        Long size = entries.remove(key);
+        if (size != null) {
+          totalBytes -= size;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Checks whether a clip is cached, without opening it.
+   *
+   * @param key the clip's key from {@link #keyOf}
+   * @return true if the clip is cached
+   */
+  public synchronized boolean contains(String key) {
+    return usable && entries.containsKey(key);
+  }
+
+  /**
+   * Stores a clip, evicting the least recently used clips if the cache is over its size cap.
+   *
+   * @param key the clip's key from {@link #keyOf}
+   * @param audio the MP3 bytes
+   */
+  public void put(String key, byte[] audio) {
+    if (!usable || audio.length == 0 || audio.length > maxBytes) {
+      return;
+    }
+    Path file = fileOf(key);
+    try {
+      // Write to a temporary file first so readers never see a partial clip
+      Path temp = Files.createTempFile(directory, key, ".tmp");
+      Files.write(temp, audio);
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      System.err.println("Could not cache TTS clip: " + e.getMessage());
+      return;
+    }
+
+    synchronized (this) {
+      Long previous = entries.put(key, (long) audio.length);
+      totalBytes += audio.length - (previous == null ? 0 : previous);
+      evictIfNeeded();
+    }
+  }
+
+  /**
+   * Gets the total size of all cached clips.
+   *
+   * @return the size in bytes
+   */
+  public synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  private Path fileOf(String key) {
+    return directory.resolve(key + EXTENSION);
+  }
+
+  // Rebuilds the LRU order from the files' modification times
+  private void loadIndex() throws IOException {
+    File[] files = directory.toFile().listFiles((dir, name) -> name.endsWith(EXTENSION));
+    if (files == null) {
+      return;
+    }
+    List<File> sorted = new ArrayList<>(List.of(files));
+    sorted.sort(Comparator.comparingLong(File::lastModified));
+    for (File file : sorted) {
+      String name = file.getName();
+      entries.put(name.substring(0, name.length() - EXTENSION.length()), file.length());
+      totalBytes += file.length();
+    }
+    evictIfNeeded();
+  }
+
+  private void evictIfNeeded() {
+    Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      Map.Entry<String, Long> eldest = iterator.next();
+      try {
+        Files.deleteIfExists(fileOf(eldest.getKey()));
+      } catch (IOException e) {
+        System.err.println("Could not evict TTS clip: " + e.getMessage());
+      }
+      totalBytes -= eldest.getValue();
+      iterator.remove();
+    }
+  }
+
+  /** Reads a byte buffer as a stream. */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
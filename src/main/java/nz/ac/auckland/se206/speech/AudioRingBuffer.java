@@ -0,0 +1,148 @@
+package nz.ac.auckland.se206.speech;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Fixed-size byte ring buffer between a thread downloading audio and the thread decoding it. The
+ * writer blocks while the buffer is full and the reader blocks while it is empty, so the download
+ * never runs more than one buffer ahead of playback.
+ */
+class AudioRingBuffer {
+
+  private final byte[] data;
+  private int readPosition;
+  private int count;
+  private boolean finished;
+  private boolean cancelled;
+  private IOException failure;
+
+  AudioRingBuffer(int capacity) {
+    data = new byte[capacity];
+  }
+
+  /**
+   * Appends bytes, waiting for the reader whenever the buffer is full.
+   *
+   * @return false if the buffer was cancelled before everything was written
+   * @throws InterruptedException if the writer is interrupted while waiting
+   */
+  synchronized boolean write(byte[] bytes, int offset, int length) throws InterruptedException {
+    while (length > 0) {
+      while (count == data.length && !cancelled) {
+        wait();
+      }
+      if (cancelled) {
+        return false;
+      }
+      int writePosition = (readPosition + count) % data.length;
+      int chunk = Math.min(length, Math.min(data.length - count, data.length - writePosition));
+      System.arraycopy(bytes, offset, data, writePosition, chunk);
+      count += chunk;
+      offset += chunk;
+      length -= chunk;
+      notifyAll();
+    }
+    return true;
+  }
+
+  /**
+   * Reads up to {@code length} bytes, waiting until at least one is available.
+   *
+   * @return the number of bytes read, or -1 once the writer has finished and the buffer is drained
+   * @throws IOException if the writer failed, or the reader is interrupted
+   */
+  synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    try {
+      while (count == 0 && !finished && !cancelled && failure == null) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for audio");
+    }
+    if (cancelled) {
+      return -1;
+    }
+    if (count == 0) {
+      if (failure != null) {
+        throw failure;
+      }
+      return -1;
+    }
+    int chunk = Math.min(length, Math.min(count, data.length - readPosition));
+    System.arraycopy(data, readPosition, bytes, offset, chunk);
+    readPosition = (readPosition + chunk) % data.length;
+    count -= chunk;
+    notifyAll();
+    return chunk;
+  }
+
+  /**
+   * Waits until at least {@code threshold} bytes are buffered or no more will arrive.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  synchronized void awaitBuffered(int threshold) throws InterruptedException {
+    int target = Math.min(threshold, data.length);
+    while (count < target && !finished && !cancelled && failure == null) {
+      wait();
+    }
+  }
+
+  /** Marks the end of the data; readers drain what is left and then see end of stream. */
+  synchronized void finish() {
+    finished = true;
+    notifyAll();
+  }
+
+  /** Reports a download error; readers see it once the buffered bytes are drained. */
+  synchronized void fail(IOException e) {
+    failure = e;
+    notifyAll();
+  }
+
+  /** Stops both sides immediately, discarding anything still buffered. */
+  synchronized void cancel() {
+    cancelled = true;
+    notifyAll();
+  }
+
+  /**
+   * Gets a stream view for the reading side.
+   *
+   * @return a stream whose reads are served from this buffer
+   */
+  InputStream asInputStream() {
+    return new InputStream() {
+      private final byte[] single = new byte[1];
+
+      @Override
+      public int read() throws IOException {
+        int n = AudioRingBuffer.this.read(single, 0, 1);
+        return n == 1 ? single[0] & 0xff : -1;
+      }
+
+      @Override
+      public int read(byte[] bytes, int offset, int length) throws IOException {
+        return AudioRingBuffer.this.read(bytes, offset, length);
+      }
+
+      @Override
+      public int available() {
+        synchronized (AudioRingBuffer.this) {
+          return count;
+        }
+      }
+
+      @Override
+      public void close() {
+        cancel();
+      }
+    };
+  }
+}
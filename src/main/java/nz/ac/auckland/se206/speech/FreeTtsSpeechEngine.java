@@ -0,0 +1,132 @@
+package nz.ac.auckland.se206.speech;
+
+import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.VoiceManager;
+import com.sun.speech.freetts.audio.AudioPlayer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speech engine that synthesizes locally with FreeTTS. It needs no network at all, so it is used
+ * for short system lines and whenever the API proxy is slow or unreachable. The voice can be
+ * changed with the system property {@code tts.local.voice} (default {@code kevin16}).
+ */
+public class FreeTtsSpeechEngine implements SpeechEngine {
+
+  private static final String VOICE_DIRECTORY =
+      "com.sun.speech.freetts.en.us.cmu_us_kal.KevinVoiceDirectory";
+
+  private final String voiceName = System.getProperty("tts.local.voice", "kevin16");
+  // FreeTTS voices are not thread safe, so every use of the voice holds this lock
+  private final Object voiceLock = new Object();
+  private volatile Voice voice;
+  private volatile boolean unavailable;
+
+  @Override
+  public String getName() {
+    return "freetts";
+  }
+
+  /**
+   * Checks whether the local voice can be used. The voice is only loaded when the first line is
+   * prepared, so this turns false once loading or speaking with it has failed.
+   *
+   * @return false if FreeTTS is known not to work
+   */
+  public boolean isAvailable() {
+    return !unavailable;
+  }
+
+  @Override
+  public CompletableFuture<SpeechClip> prepare(String text, long startNanos) {
+    // Loaded here, on the caller's background thread, so that a broken voice fails the future and
+    // the line falls back to the proxy instead of failing silently when played
+    try {
+      loadVoice();
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return CompletableFuture.completedFuture(new LocalClip(text, startNanos));
+  }
+
+  // Loads and allocates the voice on first use, marking the engine unavailable if that fails
+  private Voice loadVoice() {
+    Voice loadedVoice = voice;
+    if (loadedVoice != null) {
+      return loadedVoice;
+    }
+    synchronized (voiceLock) {
+      if (voice == null) {
+        if (unavailable) {
+          throw new IllegalStateException("FreeTTS voice " + voiceName + " is not available");
+        }
+        if (System.getProperty("freetts.voices") == null) {
+          System.setProperty("freetts.voices", VOICE_DIRECTORY);
+        }
+        try {
+          Voice loaded = VoiceManager.getInstance().getVoice(voiceName);
+          if (loaded == null) {
+            throw new IllegalStateException("FreeTTS voice not found: " + voiceName);
+          }
+          loaded.allocate();
+          voice = loaded;
+        } catch (RuntimeException e) {
+          unavailable = true;
+          throw e;
+        }
+      }
+      return voice;
+    }
+  }
+
+  /** A line that is synthesized and played in one go when played. */
+  private class LocalClip implements SpeechClip {
+    private final String text;
+    private final long startNanos;
+    private volatile boolean cancelled;
+    private volatile long timeToFirstAudioMillis = -1;
+
+    private LocalClip(String text, long startNanos) {
+      this.text = text;
+      this.startNanos = startNanos;
+    }
+
+    @Override
+    public void play() {
+      synchronized (voiceLock) {
+        if (cancelled) {
+          return;
+        }
+        // FreeTTS synthesizes and plays the first phrase almost immediately, so time it here
+        timeToFirstAudioMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        boolean spoken;
+        try {
+          spoken = voice.speak(text);
+        } catch (RuntimeException e) {
+          unavailable = true;
+          throw e;
+        }
+        if (!spoken && !cancelled) {
+          // Usually no audio line could be opened, so send later lines to the proxy instead
+          unavailable = true;
+          throw new IllegalStateException("FreeTTS could not speak with voice " + voiceName);
+        }
+      }
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      Voice localVoice = voice;
+      AudioPlayer player = localVoice == null ? null : localVoice.getAudioPlayer();
+      if (player != null) {
+        player.cancel();
+      }
+    }
+
+    @Override
+    public long getTimeToFirstAudioMillis() {
+      return timeToFirstAudioMillis;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package nz.ac.auckland.se206.speech;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import nz.ac.auckland.apiproxy.config.ApiProxyConfig;
+import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest;
+import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest.Provider;
+import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest.Voice;
+
+/**
+ * Speech engine backed by the text-to-speech API proxy. Clips are read from the {@link AudioCache}
+ * when they have been synthesized before and streamed from the API otherwise. The engine keeps a
+ * moving average of how long the API takes to answer, which the {@link SpeechEnginePolicy} uses to
+ * decide when to fall back to local synthesis.
+ */
+public class ProxySpeechEngine implements SpeechEngine {
+
+  // Weight of the newest sample in the latency moving average
+  private static final double LATENCY_SMOOTHING = 0.3;
+
+  private final Provider provider;
+  private final Voice voice;
+
+  private double averageLatencyMillis = -1;
+  private long lastSampleMillis;
+
+  public ProxySpeechEngine(Provider provider, Voice voice) {
+    this.provider = provider;
+    this.voice = voice;
+  }
+
+  @Override
+  public String getName() {
+    return "proxy";
+  }
+
+  /**
+   * Checks whether a line can be played from the cache without calling the API. Clips are cached
+   * per sentence, so this is only true when every sentence of the line has been spoken before.
+   *
+   * @param sentences the line split into the chunks that are synthesized one by one
+   * @return true if every chunk's clip is cached
+   */
+  public boolean isCached(List<String> sentences) {
+    return isCached(sentences, AudioCache.getInstance());
+  }
+
+  boolean isCached(List<String> sentences, AudioCache cache) {
+    for (String sentence : sentences) {
+      if (!cache.contains(AudioCache.keyOf(sentence, provider, voice))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public CompletableFuture<SpeechClip> prepare(String text, long startNanos) {
+    AudioCache cache = AudioCache.getInstance();
+    String key = AudioCache.keyOf(text, provider, voice);
+    InputStream cached = cache.open(key);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(StreamingAudioPlayer.fromStream(cached, startNanos));
+    }
+
+    TextToSpeechRequest ttsRequest;
+    try {
+      ttsRequest = new TextToSpeechRequest(ApiProxyConfig.readConfig());
+    } catch (ApiProxyException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    ttsRequest.setText(text).setProvider(provider).setVoice(voice);
+    long requestNanos = System.nanoTime();
+    return ttsRequest
+        .executeAsync()
+        .thenApply(
+            ttsResult -> {
+              recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestNanos));
+              StreamingAudioPlayer player =
+                  StreamingAudioPlayer.fromUrl(
+                      ttsResult.getAudioUrl(), audio -> cache.put(key, audio), startNanos);
+              player.prefetch();
+              return player;
+            });
+  }
+
+  /**
+   * Gets the moving average of how long the API takes to return a clip's URL.
+   *
+   * @return the average latency in milliseconds, or -1 if the API has not been called yet
+   */
+  public synchronized double getAverageLatencyMillis() {
+    return averageLatencyMillis;
+  }
+
+  /**
+   * Gets how long ago the latency average was last updated.
+   *
+   * @return the age in milliseconds, or {@link Long#MAX_VALUE} if it never has been
+   */
+  public synchronized long getLatencySampleAgeMillis() {
+    return lastSampleMillis == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - lastSampleMillis;
+  }
+
+  private synchronized void recordLatency(long latencyMillis) {
+    averageLatencyMillis =
+        averageLatencyMillis < 0
+            ? latencyMillis
+            : LATENCY_SMOOTHING * latencyMillis + (1 - LATENCY_SMOOTHING) * averageLatencyMillis;
+    lastSampleMillis = System.currentTimeMillis();
+  }
+}
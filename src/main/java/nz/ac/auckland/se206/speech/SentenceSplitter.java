@@ -0,0 +1,46 @@
+package nz.ac.auckland.se206.speech;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/** Splits text into sentence-sized chunks that can be synthesized and played one after another. */
+class SentenceSplitter {
+
+  // Fragments shorter than this are merged into the following sentence to avoid choppy audio
+  private static final int MIN_CHUNK_LENGTH = 24;
+
+  /**
+   * Splits text on sentence boundaries.
+   *
+   * @param text the text to split
+   * @return the sentences in order, never empty for non-blank text
+   */
+  static List<String> split(String text) {
+    List<String> chunks = new ArrayList<>();
+    BreakIterator iterator = BreakIterator.getSentenceInstance(Locale.ENGLISH);
+    iterator.setText(text);
+
+    StringBuilder pending = new StringBuilder();
+    int start = iterator.first();
+    for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+      pending.append(text, start, end);
+      if (pending.toString().trim().length() >= MIN_CHUNK_LENGTH) {
+        chunks.add(pending.toString().trim());
+        pending.setLength(0);
+      }
+    }
+
+    String rest = pending.toString().trim();
+    if (!rest.isEmpty()) {
+      if (chunks.isEmpty()) {
+        chunks.add(rest);
+      } else {
+        // Attach a short trailing fragment to the last sentence
+        chunks.set(chunks.size() - 1, chunks.get(chunks.size() - 1) + " " + rest);
+      }
+    }
+    return chunks;
+  }
+}
@@ -0,0 +1,22 @@
+package nz.ac.auckland.se206.speech;
+
+/** A synthesized line that is ready to be played by a {@link SpeechEngine}. */
+public interface SpeechClip {
+
+  /**
+   * Plays the clip on the calling thread, returning when it ends or is cancelled.
+   *
+   * @throws Exception if the audio cannot be synthesized or played
+   */
+  void play() throws Exception;
+
+  /** Stops playback as soon as possible. */
+  void cancel();
+
+  /**
+   * Gets the time from the start of the request to the first audio.
+   *
+   * @return the delay in milliseconds, or -1 if nothing has played yet
+   */
+  long getTimeToFirstAudioMillis();
+}
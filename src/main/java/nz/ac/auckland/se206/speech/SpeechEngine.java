@@ -0,0 +1,24 @@
+package nz.ac.auckland.se206.speech;
+
+import java.util.concurrent.CompletableFuture;
+
+/** A way of turning text into audio, either locally or through the API proxy. */
+public interface SpeechEngine {
+
+  /**
+   * Gets a short name for logging.
+   *
+   * @return the engine's name
+   */
+  String getName();
+
+  /**
+   * Starts synthesizing a line. The returned clip may still be downloading or synthesizing when it
+   * is played.
+   *
+   * @param text the text to speak
+   * @param startNanos when the line was requested, used for the time-to-first-audio metric
+   * @return a future that completes with a clip ready to play
+   */
+  CompletableFuture<SpeechClip> prepare(String text, long startNanos);
+}
@@ -0,0 +1,69 @@
+package nz.ac.auckland.se206.speech;
+
+import java.util.List;
+
+/**
+ * Decides which {@link SpeechEngine} speaks a line. Lines whose every sentence is already in the
+ * {@link AudioCache} always use the proxy voice since they cost nothing to replay. Otherwise short
+ * system lines, and every line while the API proxy is answering slower than the latency budget, are
+ * synthesized locally. Once the proxy latency has not been measured for a while it is tried again,
+ * so a brief slowdown does not switch the game to the local voice for good.
+ *
+ * <p>The thresholds can be changed with the system properties {@code tts.local.maxChars} (default
+ * 48), {@code tts.latencyBudgetMillis} (default 1500) and {@code tts.engine}, which forces {@code
+ * proxy} or {@code local} for every line.
+ */
+public class SpeechEnginePolicy {
+
+  private static final long RETRY_PROXY_AFTER_MILLIS = 30_000;
+
+  private final ProxySpeechEngine proxy;
+  private final FreeTtsSpeechEngine local;
+  private final int localMaxChars = Integer.getInteger("tts.local.maxChars", 48);
+  private final long latencyBudgetMillis = Long.getLong("tts.latencyBudgetMillis", 1500);
+  private final String forcedEngine = System.getProperty("tts.engine", "");
+
+  public SpeechEnginePolicy(ProxySpeechEngine proxy, FreeTtsSpeechEngine local) {
+    this.proxy = proxy;
+    this.local = local;
+  }
+
+  /**
+   * Chooses the engine for a line.
+   *
+   * @param sentences the line split into the chunks that are synthesized one by one
+   * @return the engine to synthesize it with
+   */
+  public SpeechEngine choose(List<String> sentences) {
+    if (forcedEngine.equalsIgnoreCase("local")) {
+      return local;
+    }
+    if (forcedEngine.equalsIgnoreCase("proxy")
+        || !local.isAvailable()
+        || proxy.isCached(sentences)) {
+      return proxy;
+    }
+    int length = 0;
+    for (String sentence : sentences) {
+      length += sentence.length();
+    }
+    if (length <= localMaxChars) {
+      return local;
+    }
+    boolean overBudget = proxy.getAverageLatencyMillis() > latencyBudgetMillis;
+    if (overBudget && proxy.getLatencySampleAgeMillis() < RETRY_PROXY_AFTER_MILLIS) {
+      return local;
+    }
+    return proxy;
+  }
+
+  /**
+   * Gets the engine to use when the chosen engine fails.
+   *
+   * @param failed the engine that failed
+   * @return the other engine
+   */
+  public SpeechEngine fallbackFor(SpeechEngine failed) {
+    return failed == local ? proxy : local;
+  }
+}
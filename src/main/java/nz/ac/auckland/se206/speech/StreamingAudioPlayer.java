@@ -0,0 +1,184 @@
+package nz.ac.auckland.se206.speech;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.player.Player;
+import nz.ac.auckland.apiproxy.service.HttpTransport;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+
+/**
+ * Plays an MP3 clip while it is still downloading. A producer thread copies the network stream
+ * into an {@link AudioRingBuffer} and the calling thread decodes and plays from the other end once
+ * a small prebuffer has arrived, so playback starts long before the download completes.
+ *
+ * <p>The buffer sizes can be changed with the system properties {@code tts.bufferBytes} (default
+ * 256 KB) and {@code tts.prebufferBytes} (default 16 KB).
+ */
+public class StreamingAudioPlayer implements SpeechClip {
+
+  private static final int BUFFER_BYTES = Integer.getInteger("tts.bufferBytes", 256 * 1024);
+  private static final int PREBUFFER_BYTES = Integer.getInteger("tts.prebufferBytes", 16 * 1024);
+  private static final int CHUNK_BYTES = 8 * 1024;
+
+  /**
+   * Creates a player that streams a clip from a URL.
+   *
+   * @param audioUrl the location of the MP3 clip
+   * @param onDownloaded receives the complete clip once it has downloaded in full, e.g. to cache it
+   * @param startNanos when the request for this clip started, used for the time-to-first-audio
+   *     metric
+   * @return a player ready to {@link #play()}
+   */
+  public static StreamingAudioPlayer fromUrl(
+      String audioUrl, Consumer<byte[]> onDownloaded, long startNanos) {
+    return new StreamingAudioPlayer(audioUrl, null, onDownloaded, startNanos);
+  }
+
+  /**
+   * Creates a player for a clip that is already available locally.
+   *
+   * @param audio the MP3 bytes
+   * @param startNanos when the request for this clip started
+   * @return a player ready to {@link #play()}
+   */
+  public static StreamingAudioPlayer fromStream(InputStream audio, long startNanos) {
+    return new StreamingAudioPlayer(null, audio, null, startNanos);
+  }
+
+  private final String audioUrl;
+  private final InputStream localAudio;
+  private final Consumer<byte[]> onDownloaded;
+  private final long startNanos;
+
+  private volatile boolean cancelled;
+  private volatile AudioRingBuffer buffer;
+  private volatile HttpGet request;
+  private volatile long timeToFirstAudioMillis = -1;
+
+  private StreamingAudioPlayer(
+      String audioUrl, InputStream localAudio, Consumer<byte[]> onDownloaded, long startNanos) {
+    this.audioUrl = audioUrl;
+    this.localAudio = localAudio;
+    this.onDownloaded = onDownloaded;
+    this.startNanos = startNanos;
+  }
+
+  /**
+   * Plays the clip on the calling thread, returning when it ends or is cancelled.
+   *
+   * @throws JavaLayerException if the audio cannot be decoded or played
+   * @throws InterruptedException if interrupted while waiting for the prebuffer
+   */
+  @Override
+  public void play() throws JavaLayerException, InterruptedException {
+    InputStream audio = localAudio;
+    if (audioUrl != null) {
+      AudioRingBuffer ring = startDownload();
+      ring.awaitBuffered(PREBUFFER_BYTES);
+      audio = ring.asInputStream();
+    }
+    if (cancelled) {
+      return;
+    }
+
+    Player player = new Player(audio);
+    try {
+      // Decode frame by frame so cancellation takes effect promptly
+      while (!cancelled && player.play(1)) {
+        if (timeToFirstAudioMillis < 0) {
+          timeToFirstAudioMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+      }
+    } finally {
+      player.close();
+    }
+  }
+
+  /**
+   * Starts downloading the clip without playing it yet, so a clip queued behind another one is
+   * already buffered when its turn comes. Does nothing for local clips or if already started.
+   */
+  public void prefetch() {
+    if (audioUrl != null) {
+      startDownload();
+    }
+  }
+
+  /** Stops playback and the download as soon as possible. */
+  @Override
+  public void cancel() {
+    cancelled = true;
+    AudioRingBuffer ring = buffer;
+    if (ring != null) {
+      ring.cancel();
+    }
+    HttpGet httpGet = request;
+    if (httpGet != null) {
+      httpGet.abort(); // unblocks a producer waiting on the network
+    }
+  }
+
+  /**
+   * Gets the time from the start of the request to the first decoded audio frame.
+   *
+   * @return the delay in milliseconds, or -1 if nothing has played yet
+   */
+  @Override
+  public long getTimeToFirstAudioMillis() {
+    return timeToFirstAudioMillis;
+  }
+
+  private synchronized AudioRingBuffer startDownload() {
+    if (buffer == null) {
+      AudioRingBuffer ring = new AudioRingBuffer(BUFFER_BYTES);
+      buffer = ring;
+      if (cancelled) {
+        ring.cancel();
+      }
+      Thread.ofVirtual().name("tts-download-", 0).start(() -> download(ring));
+    }
+    return buffer;
+  }
+
+  // Producer side: copies the network stream into the ring buffer and keeps a copy for the cache.
+  // The pooled client's connect and socket timeouts stop a stalled download from hanging forever.
+  private void download(AudioRingBuffer ring) {
+    ByteArrayOutputStream copy = new ByteArrayOutputStream();
+    HttpGet httpGet = new HttpGet(audioUrl);
+    request = httpGet;
+    if (cancelled) {
+      ring.cancel();
+      return;
+    }
+    try (CloseableHttpResponse response = HttpTransport.getInstance().getClient().execute(httpGet);
+        InputStream input = response.getEntity().getContent()) {
+      int status = response.getStatusLine().getStatusCode();
+      if (status != HttpStatus.SC_OK) {
+        throw new IOException("Audio download failed with HTTP " + status);
+      }
+      byte[] chunk = new byte[CHUNK_BYTES];
+      int read;
+      while ((read = input.read(chunk)) != -1) {
+        if (!ring.write(chunk, 0, read)) {
+          return; // cancelled, the partial clip is not worth keeping
+        }
+        copy.write(chunk, 0, read);
+      }
+      ring.finish();
+      if (onDownloaded != null) {
+        onDownloaded.accept(copy.toByteArray());
+      }
+    } catch (IOException e) {
+      ring.fail(e);
+    } catch (InterruptedException e) {
+      ring.cancel();
+      Thread.currentThread().interrupt();
+    }
+  }
+}
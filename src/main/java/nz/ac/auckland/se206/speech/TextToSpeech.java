@@ -1,25 +1,40 @@
 package nz.ac.auckland.se206.speech;
 
-import java.io.BufferedInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
-
-import javafx.concurrent.Task;
-import javazoom.jl.decoder.JavaLayerException;
-import javazoom.jl.player.Player;
-import nz.ac.auckland.apiproxy.config.ApiProxyConfig;
-import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
-import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest.Provider;
 import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest.Voice;
-import nz.ac.auckland.apiproxy.tts.TextToSpeechResult;
+import nz.ac.auckland.se206.BackgroundExecutor;
+import nz.ac.auckland.se206.BackgroundExecutor.Category;
 
-/** A utility class for converting text to speech using the specified API proxy. */
+/**
+ * A utility class for converting text to speech, either through the API proxy or locally with
+ * FreeTTS as chosen by the {@link SpeechEnginePolicy}. Synthesized clips are kept in the {@link
+ * AudioCache}, so lines that have been spoken before play without another API call, new clips
+ * start playing while they are still downloading, and long passages are synthesized sentence by
+ * sentence.
+ */
 public class TextToSpeech {
 
+  private static final Provider PROVIDER = Provider.OPENAI;
+  private static final Voice VOICE = Voice.OPENAI_NOVA;
+
+  private static final SpeechEnginePolicy policy =
+      new SpeechEnginePolicy(new ProxySpeechEngine(PROVIDER, VOICE), new FreeTtsSpeechEngine());
+  private static final Set<SpeechClip> activeClips = ConcurrentHashMap.newKeySet();
+  private static final AtomicLong firstAudioTotalMillis = new AtomicLong();
+  private static final AtomicLong firstAudioCount = new AtomicLong();
+  // Bumped by stopAll so pipelines still working through their sentences give up
+  private static final AtomicLong generation = new AtomicLong();
+
   /**
-   * Converts the given text to speech and plays the audio.
+   * Converts the given text to speech and plays the audio. Longer text is split into sentences
+   * that are synthesized one ahead of playback, so the first sentence starts playing without
+   * waiting for the whole passage to be synthesized.
    *
    * @param text the text to be converted to speech
    * @throws IllegalArgumentException if the text is null or empty
@@ -29,38 +44,125 @@ public class TextToSpeech {
       throw new IllegalArgumentException("Text should not be null or empty");
     }
 
-    Task<Void> backgroundTask =
-        new Task<>() {
-          @Override
-          protected Void call() {
-            try {
-              ApiProxyConfig config = ApiProxyConfig.readConfig();
-              Provider provider = Provider.OPENAI;
-              Voice voice = Voice.OPENAI_NOVA;
+    List<String> sentences = SentenceSplitter.split(text);
+    if (sentences.isEmpty()) {
+      return;
+    }
+    BackgroundExecutor.getInstance()
+        .submit(
+            Category.TTS,
+            () -> {
+              try {
+                playInOrder(sentences);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+  }
 
-              TextToSpeechRequest ttsRequest = new TextToSpeechRequest(config);
-              ttsRequest.setText(text).setProvider(provider).setVoice(voice);
+  /** Stops every clip that is currently playing or downloading. */
+  public static void stopAll() {
+    generation.incrementAndGet();
+    for (SpeechClip clip : activeClips) {
+      clip.cancel();
+    }
+  }
 
-              TextToSpeechResult ttsResult = ttsRequest.execute();
-              String audioUrl = ttsResult.getAudioUrl();
+  /**
+   * Gets the average delay between requesting a line and hearing its first audio frame.
+   *
+   * @return the mean time to first audio in milliseconds, or -1 if nothing has played yet
+   */
+  public static long getMeanTimeToFirstAudioMillis() {
+    long count = firstAudioCount.get();
+    return count == 0 ? -1 : firstAudioTotalMillis.get() / count;
+  }
 
-              try (InputStream inputStream =
-                  new BufferedInputStream(new URL(audioUrl).openStream())) {
-                Player player = new Player(inputStream);
-                player.play();
-              } catch (JavaLayerException | IOException e) {
-                e.printStackTrace();
-              }
+  /**
+   * Plays the sentences back to back. Synthesis of the next sentence is requested and its download
+   * started before the current one plays, so it is buffered by the time the current one ends.
+   */
+  private static void playInOrder(List<String> sentences) throws InterruptedException {
+    long startGeneration = generation.get();
+    long startNanos = System.nanoTime();
+    // One engine for the whole passage so the voice does not change mid-answer
+    SpeechEngine engine = policy.choose(sentences);
+    System.out.println("TTS: speaking with " + engine.getName());
+    CompletableFuture<SpeechClip> next = prepare(engine, sentences.get(0), startNanos);
+    try {
+      for (int i = 0; i < sentences.size(); i++) {
+        SpeechClip current;
+        try {
+          current = next.get();
+        } catch (ExecutionException e) {
+          System.err.println("TTS: could not synthesize sentence " + (i + 1));
+          e.getCause().printStackTrace();
+          current = null;
+        }
+        next = i + 1 < sentences.size() ? prepare(engine, sentences.get(i + 1), startNanos) : null;
 
-            } catch (ApiProxyException e) {
-              e.printStackTrace();
-            }
-            return null;
-          }
-        };
+        if (generation.get() != startGeneration) {
+          cancelPending(current, next);
+          return;
+        }
+        if (current == null) {
+          continue;
+        }
+        try {
+          play(current, i == 0);
+        } catch (InterruptedException e) {
+          throw e;
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      }
+    } finally {
+      // A prefetched clip that will never play would otherwise keep downloading into a full buffer
+      cancelPending(null, next);
+    }
+  }
 
-    Thread backgroundThread = new Thread(backgroundTask);
-    backgroundThread.setDaemon(true); // Ensure the thread does not prevent JVM shutdown
-    backgroundThread.start();
+  // Falls back to the other engine if the chosen one cannot synthesize the sentence
+  private static CompletableFuture<SpeechClip> prepare(
+      SpeechEngine engine, String sentence, long startNanos) {
+    return engine
+        .prepare(sentence, startNanos)
+        .exceptionallyCompose(
+            e -> {
+              SpeechEngine fallback = policy.fallbackFor(engine);
+              System.err.println(
+                  "TTS: "
+                      + engine.getName()
+                      + " failed ("
+                      + e.getMessage()
+                      + "), using "
+                      + fallback.getName());
+              return fallback.prepare(sentence, startNanos);
+            });
+  }
+
+  private static void cancelPending(SpeechClip current, CompletableFuture<SpeechClip> next) {
+    if (current != null) {
+      current.cancel();
+    }
+    if (next != null) {
+      next.thenAccept(SpeechClip::cancel);
+    }
+  }
+
+  private static void play(SpeechClip clip, boolean recordFirstAudio) throws Exception {
+    activeClips.add(clip);
+    try {
+      clip.play();
+    } finally {
+      activeClips.remove(clip);
+    }
+
+    long firstAudioMillis = clip.getTimeToFirstAudioMillis();
+    if (recordFirstAudio && firstAudioMillis >= 0) {
+      firstAudioTotalMillis.addAndGet(firstAudioMillis);
+      firstAudioCount.incrementAndGet();
+      System.out.println("TTS: first audio after " + firstAudioMillis + " ms");
+    }
   }
 }
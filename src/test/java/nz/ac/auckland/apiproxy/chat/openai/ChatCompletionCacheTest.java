@@ -0,0 +1,83 @@
+package nz.ac.auckland.apiproxy.chat.openai;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ChatCompletionCacheTest {
+
+  @TempDir Path dir;
+
+  private final AtomicLong now = new AtomicLong();
+
+  private ChatCompletionResult result(String content) {
+    Choice choice = new Choice(new ChatMessage("assistant", content), 0, "stop");
+    return new ChatCompletionResult("gpt-4.1-nano", 0, 1, 1, 2, List.of(choice));
+  }
+
+  private String key(String content, double temperature) {
+    return ChatCompletionCache.keyOf(
+        "gpt-4.1-nano", List.of(new ChatMessage("user", content)), temperature, 0.5, 150, 1);
+  }
+
+  @Test
+  public void testKeyDependsOnEveryParameter() {
+    assertEquals(key("hello", 0.2), key("hello", 0.2));
+    assertNotEquals(key("hello", 0.2), key("hello", 0.3));
+    assertNotEquals(key("hello", 0.2), key("hello!", 0.2));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvictedAndCounted() {
+    ChatCompletionCache cache = new ChatCompletionCache(2, 1000, 60_000, now::get, null);
+    ChatCompletionResult a = result("a");
+    cache.put("a", a);
+    cache.put("b", result("b"));
+    assertSame(a, cache.get("a"));
+
+    cache.put("c", result("c"));
+
+    assertNull(cache.get("b"));
+    assertSame(a, cache.get("a"));
+    assertEquals(2, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void testEntriesExpireAfterTtl() {
+    ChatCompletionCache cache = new ChatCompletionCache(10, 1000, 60_000, now::get, null);
+    cache.put("a", result("a"));
+
+    now.set(60_001);
+
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testDiskWritesAreQueuedAndEvictedResultsAreReadBack() throws Exception {
+    List<Runnable> queued = new ArrayList<>();
+    try (PersistentCompletionStore store =
+        new PersistentCompletionStore(dir, 1024 * 1024, 60_000, now::get)) {
+      ChatCompletionCache cache =
+          new ChatCompletionCache(1, 1000, 60_000, now::get, store, queued::add);
+      cache.put(key("a", 0.2), result("a"));
+      assertEquals(0, store.size());
+
+      queued.forEach(Runnable::run);
+      cache.put(key("b", 0.2), result("b")); // evicts "a" from memory
+
+      assertEquals("a", cache.get(key("a", 0.2)).getChoice(0).getChatMessage().getContent());
+      assertEquals(1, cache.getDiskHits());
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package nz.ac.auckland.apiproxy.chat.openai;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+import org.junit.jupiter.api.Test;
+
+public class ChatStreamParserTest {
+
+  private ChatCompletionResult parse(String stream, List<String> deltas) throws Exception {
+    ChatStreamParser parser = new ChatStreamParser(deltas::add);
+    return parser.parse(new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testDeltasAreForwardedAndAssembled() throws Exception {
+    String stream =
+        ": keep-alive\n\n"
+            + "data: {\"model\":\"gpt-4.1-nano\",\"created\":42,\"choices\":[{\"index\":0,"
+            + "\"delta\":{\"role\":\"assistant\",\"content\":\"\"}}]}\n\n"
+            + "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"Auck\"}}]}\n\n"
+            + "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"land\"},"
+            + "\"finish_reason\":\"stop\"}]}\n\n"
+            + "data: {\"choices\":[],\"usage\":{\"prompt_tokens\":7,\"completion_tokens\":2,"
+            + "\"total_tokens\":9}}\n\n"
+            + "data: [DONE]\n\n";
+    List<String> deltas = new ArrayList<>();
+
+    ChatCompletionResult result = parse(stream, deltas);
+
+    assertEquals(List.of("Auck", "land"), deltas);
+    assertEquals("gpt-4.1-nano", result.getModel());
+    assertEquals(42, result.getCreated());
+    assertEquals(9, result.getUsageTotalTokens());
+    assertEquals(1, result.getNumChoices());
+    assertEquals("assistant", result.getChoice(0).getChatMessage().getRole());
+    assertEquals("Auckland", result.getChoice(0).getChatMessage().getContent());
+    assertEquals("stop", result.getChoice(0).getFinishReason());
+  }
+
+  @Test
+  public void testErrorEventIsReported() {
+    String stream = "data: {\"error\":{\"message\":\"rate limited\"}}\n\n";
+    assertThrows(ApiProxyException.class, () -> parse(stream, new ArrayList<>()));
+  }
+}
@@ -0,0 +1,105 @@
+package nz.ac.auckland.apiproxy.chat.openai;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PersistentCompletionStoreTest {
+
+  @TempDir Path dir;
+
+  private final AtomicLong now = new AtomicLong();
+
+  private PersistentCompletionStore open() throws Exception {
+    return new PersistentCompletionStore(dir, 1024 * 1024, 60_000, now::get);
+  }
+
+  private ChatCompletionResult result(String content) {
+    Choice choice = new Choice(new ChatMessage("assistant", content), 0, "stop");
+    return new ChatCompletionResult("gpt-4.1-nano", 7, 3, 4, 7, List.of(choice));
+  }
+
+  private String key(String content) {
+    return ChatCompletionCache.keyOf(
+        "gpt-4.1-nano", List.of(new ChatMessage("user", content)), 0.2, 0.5, 150, 1);
+  }
+
+  @Test
+  public void testResultsSurviveReopening() throws Exception {
+    try (PersistentCompletionStore store = open()) {
+      store.put(key("a"), result("Kia ora"));
+    }
+
+    try (PersistentCompletionStore store = open()) {
+      ChatCompletionResult restored = store.get(key("a"));
+      assertEquals("Kia ora", restored.getChoice(0).getChatMessage().getContent());
+      assertEquals("stop", restored.getChoice(0).getFinishReason());
+      assertEquals(7, restored.getUsageTotalTokens());
+    }
+  }
+
+  @Test
+  public void testMissingIndexAndTornRecordAreRecovered() throws Exception {
+    try (PersistentCompletionStore store = open()) {
+      store.put(key("a"), result("first"));
+      store.put(key("b"), result("second"));
+    }
+    Files.delete(dir.resolve("completions.idx"));
+    Files.write(dir.resolve("completions.log"), new byte[] {1, 2, 3}, StandardOpenOption.APPEND);
+
+    try (PersistentCompletionStore store = open()) {
+      assertEquals(2, store.size());
+      assertEquals("second", store.get(key("b")).getChoice(0).getChatMessage().getContent());
+    }
+  }
+
+  @Test
+  public void testCompactionDropsSupersededAndExpiredRecords() throws Exception {
+    try (PersistentCompletionStore store = open()) {
+      store.put(key("a"), result("old"));
+      store.put(key("a"), result("new"));
+      store.put(key("b"), result("expiring"));
+      long before = store.getLogBytes();
+
+      now.set(30_000);
+      store.put(key("c"), result("fresh"));
+      now.set(70_000);
+      store.compact();
+
+      assertTrue(store.getLogBytes() < before);
+      assertNull(store.get(key("b")));
+      assertEquals("fresh", store.get(key("c")).getChoice(0).getChatMessage().getContent());
+    }
+  }
+
+  @Test
+  public void testPutsAtTheCapCompactDownToHalfOfIt() throws Exception {
+    long maxBytes = 8 * 1024;
+    String content = "x".repeat(150);
+    int puts = 400;
+    try (PersistentCompletionStore store =
+        new PersistentCompletionStore(dir, maxBytes, 60_000, now::get)) {
+      for (int i = 0; i < puts; i++) {
+        now.set(i);
+        store.put(key("q" + i), result(content));
+        assertTrue(store.getLogBytes() <= maxBytes);
+      }
+
+      // Each compaction frees half the cap, so it takes many puts to reach the cap again
+      long recordBytes = store.getLogBytes() / store.size();
+      long putsPerCompaction = maxBytes / 2 / recordBytes;
+      assertTrue(store.getCompactions() > 0);
+      assertTrue(store.getCompactions() <= puts / putsPerCompaction + 1);
+      ChatCompletionResult newest = store.get(key("q" + (puts - 1)));
+      assertEquals(content, newest.getChoice(0).getChatMessage().getContent());
+    }
+  }
+}
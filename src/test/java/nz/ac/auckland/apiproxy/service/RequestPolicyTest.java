@@ -0,0 +1,106 @@
+package nz.ac.auckland.apiproxy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+import org.junit.jupiter.api.Test;
+
+public class RequestPolicyTest {
+
+  private final LatencyTracker latencies = new LatencyTracker(16, 4);
+
+  private CompletableFuture<String> failure(boolean retryable) {
+    return CompletableFuture.failedFuture(new ApiProxyException("down", null, retryable));
+  }
+
+  @Test
+  public void testTransientFailuresAreRetried() throws Exception {
+    RequestPolicy policy = new RequestPolicy(3, 1, 2, 5000, 5000, false);
+    AtomicInteger attempts = new AtomicInteger();
+
+    String result =
+        policy
+            .execute(
+                claim ->
+                    attempts.incrementAndGet() < 3
+                        ? failure(true)
+                        : CompletableFuture.completedFuture("ok"),
+                latencies,
+                false)
+            .get(5, TimeUnit.SECONDS);
+
+    assertEquals("ok", result);
+    assertEquals(3, attempts.get());
+    assertTrue(policy.describe().startsWith("retries=2"));
+  }
+
+  @Test
+  public void testPermanentFailuresAndClaimedStreamsAreNotRetried() {
+    RequestPolicy policy = new RequestPolicy(3, 1, 2, 5000, 5000, false);
+    AtomicInteger attempts = new AtomicInteger();
+
+    assertThrows(
+        ExecutionException.class,
+        () ->
+            policy
+                .execute(
+                    claim -> {
+                      attempts.incrementAndGet();
+                      return failure(false);
+                    },
+                    latencies,
+                    false)
+                .get(5, TimeUnit.SECONDS));
+    assertEquals(1, attempts.get());
+
+    // Output was delivered before the failure, so sending it again would repeat it
+    assertThrows(
+        ExecutionException.class,
+        () ->
+            policy
+                .execute(
+                    claim -> {
+                      attempts.incrementAndGet();
+                      claim.claim();
+                      return failure(true);
+                    },
+                    latencies,
+                    false)
+                .get(5, TimeUnit.SECONDS));
+    assertEquals(2, attempts.get());
+  }
+
+  @Test
+  public void testSlowAttemptIsHedgedAndCancelled() throws Exception {
+    RequestPolicy policy = new RequestPolicy(2, 1, 2, 5000, 50, true);
+    List<CompletableFuture<String>> started = new ArrayList<>();
+
+    String result =
+        policy
+            .execute(
+                claim -> {
+                  CompletableFuture<String> attempt =
+                      started.isEmpty()
+                          ? new CompletableFuture<>()
+                          : CompletableFuture.completedFuture("hedged");
+                  started.add(attempt);
+                  return attempt;
+                },
+                latencies,
+                true)
+            .get(5, TimeUnit.SECONDS);
+
+    assertEquals("hedged", result);
+    assertEquals(2, started.size());
+    assertTrue(started.get(0).isCancelled());
+    assertEquals("retries=0, timeouts=0, hedges=1 (1 won)", policy.describe());
+  }
+}
@@ -0,0 +1,77 @@
+package nz.ac.auckland.apiproxy.stub;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import nz.ac.auckland.apiproxy.chat.openai.ChatCompletionRequest;
+import nz.ac.auckland.apiproxy.chat.openai.ChatCompletionResult;
+import nz.ac.auckland.apiproxy.config.ApiProxyConfig;
+import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+import nz.ac.auckland.apiproxy.service.EndpointResolver;
+import nz.ac.auckland.apiproxy.service.EndpointResolver.Route;
+import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class StubProxyServerTest {
+
+  private StubProxyServer stub;
+
+  @BeforeEach
+  public void startStub() throws Exception {
+    stub = new StubProxyServer(0).setChatReply("Hello from the stub.").start();
+    System.setProperty("apiproxy.baseUrl", stub.getBaseUrl());
+  }
+
+  @AfterEach
+  public void stopStub() {
+    System.clearProperty("apiproxy.baseUrl");
+    stub.stop();
+  }
+
+  private ChatCompletionRequest request() throws ApiProxyException {
+    return new ChatCompletionRequest(ApiProxyConfig.readConfig())
+        .setUseCache(false)
+        .addMessage("user", "Who are you?");
+  }
+
+  @Test
+  public void testEndpointsFollowBaseUrl() {
+    assertEquals(
+        stub.getBaseUrl() + "/openai-chat-completion",
+        EndpointResolver.resolve(Route.CHAT_COMPLETIONS));
+    System.setProperty("apiproxy.endpoint.tts", "http://localhost:1/tts");
+    try {
+      assertEquals("http://localhost:1/tts", EndpointResolver.resolve(Route.TEXT_TO_SPEECH));
+    } finally {
+      System.clearProperty("apiproxy.endpoint.tts");
+    }
+  }
+
+  @Test
+  public void testChatIsAnsweredBufferedAndStreamed() throws Exception {
+    ChatCompletionResult result = request().execute();
+    assertEquals("Hello from the stub.", result.getChoice(0).getChatMessage().getContent());
+    assertTrue(result.getUsageTotalTokens() > 0);
+
+    StringBuilder deltas = new StringBuilder();
+    ChatCompletionResult streamed = request().executeStreaming(deltas::append);
+    assertEquals("Hello from the stub.", deltas.toString());
+    assertEquals("Hello from the stub.", streamed.getChoice(0).getChatMessage().getContent());
+    assertEquals("chat=2, tts=0, failures=0", stub.describe());
+  }
+
+  @Test
+  public void testTextToSpeechAndFailures() throws Exception {
+    String audioUrl =
+        new TextToSpeechRequest(ApiProxyConfig.readConfig()).setText("Hi").execute().getAudioUrl();
+    assertTrue(audioUrl.endsWith("/audio"));
+
+    stub.setErrorRate(1);
+    assertThrows(ApiProxyException.class, () -> request().execute());
+    assertThrows(ApiProxyException.class, () -> request().executeStreaming(delta -> {}));
+    assertEquals("chat=2, tts=1, failures=2", stub.describe());
+  }
+}
@@ -0,0 +1,42 @@
+package nz.ac.auckland.se206;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import nz.ac.auckland.apiproxy.exceptions.ApiProxyException;
+import nz.ac.auckland.apiproxy.service.ApiProxyExecutor;
+import nz.ac.auckland.se206.BackgroundExecutor.Category;
+import org.junit.jupiter.api.Test;
+
+public class BackgroundExecutorTest {
+
+  @Test
+  public void testFailedProxyCallsAreCounted() throws Exception {
+    BackgroundExecutor background = BackgroundExecutor.getInstance();
+    long failed = background.getMetrics(Category.SUMMARY).getFailed();
+    long completed = background.getMetrics(Category.SUMMARY).getCompleted();
+
+    CompletableFuture<String> failure =
+        ApiProxyExecutor.submit(
+            () -> {
+              throw new ApiProxyException("down");
+            },
+            () -> {},
+            background.executor(Category.SUMMARY));
+    assertThrows(ExecutionException.class, () -> failure.get(5, TimeUnit.SECONDS));
+    ApiProxyExecutor.submit(() -> "ok", () -> {}, background.executor(Category.SUMMARY))
+        .get(5, TimeUnit.SECONDS);
+
+    // The counters are updated just after the futures complete
+    long deadline = System.currentTimeMillis() + 5000;
+    while (background.getMetrics(Category.SUMMARY).getCompleted() < completed + 2
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(completed + 2, background.getMetrics(Category.SUMMARY).getCompleted());
+    assertEquals(failed + 1, background.getMetrics(Category.SUMMARY).getFailed());
+  }
+}
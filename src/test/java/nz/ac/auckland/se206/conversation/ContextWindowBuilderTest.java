@@ -0,0 +1,51 @@
+package nz.ac.auckland.se206.conversation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import nz.ac.auckland.apiproxy.chat.openai.TokenEstimator;
+import org.junit.jupiter.api.Test;
+
+public class ContextWindowBuilderTest {
+
+  private List<String> contents(List<ConversationEntry> entries) {
+    List<String> contents = new ArrayList<>();
+    for (ConversationEntry entry : entries) {
+      contents.add(entry.getContent());
+    }
+    return contents;
+  }
+
+  @Test
+  public void testKeepsNewestAndMostRelevantWithinBudget() {
+    ConversationStore store = new ConversationStore(16);
+    store.append("aiWitness", "user", "User", "Tell me about what the outbreak model predicted?");
+    store.append("aiWitness", "assistant", "PathoScan-7", "Something unrelated about weather.");
+    store.append("aiWitness", "user", "User", "Another unrelated question regarding lunch.");
+    store.append("aiWitness", "assistant", "PathoScan-7", "Lunch was fine.");
+    store.append("aiWitness", "user", "User", "Thanks.");
+    List<ConversationEntry> candidates = store.history("aiWitness");
+
+    String system = "You are a witness.";
+    String message = "Tell me more about the outbreak model.";
+    int fixed =
+        TokenEstimator.estimateMessage(system)
+            + TokenEstimator.estimateMessage(message)
+            + TokenEstimator.REPLY_PRIMING;
+    // Room for the two newest turns and only one of the older questions
+    int budget =
+        fixed
+            + candidates.get(0).getTokenEstimate()
+            + candidates.get(3).getTokenEstimate()
+            + candidates.get(4).getTokenEstimate();
+    ContextWindowBuilder.Window window =
+        new ContextWindowBuilder(budget).build(system, candidates, "aiWitness", message);
+
+    assertEquals(
+        List.of("Tell me about what the outbreak model predicted?", "Lunch was fine.", "Thanks."),
+        contents(window.getEntries()));
+    assertTrue(window.getPromptTokens() <= budget);
+  }
+}
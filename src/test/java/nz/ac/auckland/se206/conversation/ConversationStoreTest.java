@@ -0,0 +1,58 @@
+package nz.ac.auckland.se206.conversation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class ConversationStoreTest {
+
+  private List<String> contents(List<ConversationEntry> entries) {
+    List<String> contents = new ArrayList<>();
+    for (ConversationEntry entry : entries) {
+      contents.add(entry.getContent());
+    }
+    return contents;
+  }
+
+  @Test
+  public void testRingKeepsNewestEntriesInOrder() {
+    ConversationStore store = new ConversationStore(3);
+    for (int i = 1; i <= 5; i++) {
+      store.append("aiWitness", "user", "User", "m" + i);
+    }
+
+    assertEquals(List.of("m3", "m4", "m5"), contents(store.history("aiWitness")));
+  }
+
+  @Test
+  public void testSharedIndexInterleavesParticipants() {
+    ConversationStore store = new ConversationStore(8);
+    store.append("aiWitness", "user", "User", "a");
+    store.append("humanWitness", "user", "User", "b");
+    ConversationEntry last = store.append("aiWitness", "assistant", "PathoScan-7", "c");
+
+    List<ConversationEntry> recent = new ArrayList<>();
+    store.forEachRecentShared(2, recent::add);
+
+    assertEquals(List.of("b", "c"), contents(recent));
+    assertEquals(2, last.getSequence());
+    assertEquals("PathoScan-7: c", last.toDisplayString());
+  }
+
+  @Test
+  public void testContextMergesTimelinesByRecencyWithoutDuplicates() {
+    ConversationStore store = new ConversationStore(16);
+    store.append("aiWitness", "user", "User", "w1");
+    store.append("humanWitness", "user", "User", "h1");
+    store.append("aiWitness", "assistant", "PathoScan-7", "w2");
+    store.append("humanWitness", "assistant", "Dr. Payne Gaun", "h2");
+    store.append("aiWitness", "user", "User", "w3");
+
+    List<ConversationEntry> context = new ArrayList<>();
+    store.forEachInContext("aiWitness", 3, 2, context::add);
+
+    assertEquals(List.of("w1", "w2", "h2", "w3"), contents(context));
+  }
+}
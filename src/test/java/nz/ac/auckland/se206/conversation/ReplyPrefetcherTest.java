@@ -0,0 +1,71 @@
+package nz.ac.auckland.se206.conversation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import nz.ac.auckland.apiproxy.chat.openai.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+public class ReplyPrefetcherTest {
+
+  private long now;
+
+  private ReplyPrefetcher prefetcher() {
+    return new ReplyPrefetcher(
+        Map.of("aiWitness", List.of("What happened?", "What did your scan show?")),
+        1000,
+        0.6,
+        () -> now);
+  }
+
+  private CompletableFuture<ChatMessage> reply(String question) {
+    return CompletableFuture.completedFuture(new ChatMessage("assistant", "re: " + question));
+  }
+
+  @Test
+  public void testMatchingQuestionTakesReplyOnce() {
+    ReplyPrefetcher prefetcher = prefetcher();
+    List<String> asked = new ArrayList<>();
+    prefetcher.prefetch(
+        "aiWitness",
+        "ctx",
+        question -> {
+          asked.add(question);
+          return reply(question);
+        });
+    // Already asked in this context
+    prefetcher.prefetch("aiWitness", "ctx", question -> reply("again"));
+
+    assertEquals(List.of("What happened?", "What did your scan show?"), asked);
+    assertEquals(
+        "re: What did your scan show?",
+        prefetcher.take("aiWitness", "ctx", "so what did the scan show").getContent());
+    assertNull(prefetcher.take("aiWitness", "ctx", "What did your scan show?"));
+    assertNull(prefetcher.take("aiWitness", "other ctx", "What happened?"));
+    assertNull(prefetcher.take("humanWitness", "ctx", "What happened?"));
+    assertNull(prefetcher.take("aiWitness", "ctx", "Who are you?"));
+  }
+
+  @Test
+  public void testPendingAndExpiredRepliesAreNotUsed() {
+    ReplyPrefetcher prefetcher = prefetcher();
+    CompletableFuture<ChatMessage> pending = new CompletableFuture<>();
+    prefetcher.prefetch("aiWitness", "ctx", question -> pending);
+
+    assertNull(prefetcher.take("aiWitness", "ctx", "What happened?"));
+    pending.complete(new ChatMessage("assistant", "done"));
+    now = 1001;
+    assertNull(prefetcher.take("aiWitness", "ctx", "What happened?"));
+  }
+
+  @Test
+  public void testSimilarityIgnoresCaseAndFillerWords() {
+    assertEquals(1.0, ReplyPrefetcher.similarity("What happened?", "so WHAT happened"));
+    assertTrue(ReplyPrefetcher.similarity("What happened?", "Why did you do it?") < 0.6);
+  }
+}
@@ -0,0 +1,85 @@
+package nz.ac.auckland.se206.images;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ImageVariantGeneratorTest {
+
+  @TempDir Path dir;
+
+  private void writeImage(Path file, int width, int height, boolean transparent) throws Exception {
+    BufferedImage image =
+        new BufferedImage(
+            width, height, transparent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, transparent && x < width / 2 ? 0x00ffffff : 0xff336699);
+      }
+    }
+    ImageIO.write(image, "png", file.toFile());
+  }
+
+  private ImageVariants generate(Path images, Path classes) throws Exception {
+    ImageVariantGenerator.generate(
+        images, classes, ImageVariantGenerator.parseBoxes("800x600,400x300,100x100"));
+    Properties manifest = new Properties();
+    Path manifestFile = classes.resolve("images/variants/manifest.properties");
+    try (Reader reader = Files.newBufferedReader(manifestFile)) {
+      manifest.load(reader);
+    }
+    return new ImageVariants(manifest);
+  }
+
+  @Test
+  public void testVariantsAreWrittenAndChosenBySize() throws Exception {
+    Path images = Files.createDirectories(dir.resolve("images"));
+    Path classes = dir.resolve("classes");
+    writeImage(images.resolve("slide.png"), 1200, 800, false);
+    writeImage(images.resolve("icon.png"), 200, 100, true);
+
+    ImageVariants variants = generate(images, classes);
+
+    // Opaque images become JPEGs, transparent ones stay PNG, and nothing is scaled up
+    BufferedImage slide =
+        ImageIO.read(classes.resolve("images/variants/slide-400x267.jpg").toFile());
+    assertEquals(400, slide.getWidth());
+    assertTrue(Files.exists(classes.resolve("images/variants/slide-800x533.jpg")));
+    assertTrue(Files.exists(classes.resolve("images/variants/icon-100x50.png")));
+    assertEquals("/images/icon.png", variants.resolve("/images/icon.png", 800, 600));
+
+    // The smallest variant with at least as many pixels as the view wins
+    String path = "/images/slide.png";
+    assertEquals("/images/variants/slide-400x267.jpg", variants.resolve(path, 400, 300));
+    assertEquals("/images/variants/slide-800x533.jpg", variants.resolve(path, 500, 300));
+    assertEquals(path, variants.resolve(path, 1000, 700));
+    assertEquals(path, variants.resolve(path, 0, 0));
+    assertEquals("/images/other.png", variants.resolve("/images/other.png", 100, 100));
+  }
+
+  @Test
+  public void testUnchangedImagesAreNotWrittenAgain() throws Exception {
+    Path images = Files.createDirectories(dir.resolve("images"));
+    Path classes = dir.resolve("classes");
+    writeImage(images.resolve("slide.png"), 1200, 800, false);
+    Files.setLastModifiedTime(images.resolve("slide.png"), FileTime.fromMillis(0));
+    generate(images, classes);
+
+    int written =
+        ImageVariantGenerator.generate(
+            images, classes, ImageVariantGenerator.parseBoxes("800x600,400x300,100x100"));
+    assertEquals(0, written);
+    assertEquals(
+        "/images/variants/slide-100x67.jpg",
+        generate(images, classes).resolve("/images/slide.png", 100, 100));
+  }
+}
@@ -0,0 +1,53 @@
+package nz.ac.auckland.se206.speech;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest.Provider;
+import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest.Voice;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AudioCacheTest {
+
+  @TempDir Path cacheDir;
+
+  @Test
+  public void testKeyDependsOnTextProviderAndVoice() {
+    String key = AudioCache.keyOf("Correct.", Provider.OPENAI, Voice.OPENAI_NOVA);
+    assertEquals(key, AudioCache.keyOf("Correct.", Provider.OPENAI, Voice.OPENAI_NOVA));
+    assertNotEquals(key, AudioCache.keyOf("Incorrect", Provider.OPENAI, Voice.OPENAI_NOVA));
+    assertNotEquals(key, AudioCache.keyOf("Correct.", Provider.OPENAI, Voice.OPENAI_ALLOY));
+  }
+
+  @Test
+  public void testClipsSurviveRestart() throws IOException {
+    byte[] audio = {1, 2, 3, 4};
+    new AudioCache(cacheDir, 1024).put("clip", audio);
+
+    try (InputStream cached = new AudioCache(cacheDir, 1024).open("clip")) {
+      assertNotNull(cached);
+      assertArrayEquals(audio, cached.readAllBytes());
+    }
+  }
+
+  @Test
+  public void testLeastRecentlyUsedClipIsEvicted() throws IOException {
+    AudioCache cache = new AudioCache(cacheDir, 10);
+    cache.put("a", new byte[4]);
+    cache.put("b", new byte[4]);
+    cache.open("a").close(); // "b" is now the least recently used
+    cache.put("c", new byte[4]);
+
+    assertNull(cache.open("b"));
+    assertNotNull(cache.open("a"));
+    assertNotNull(cache.open("c"));
+    assertEquals(8, cache.getTotalBytes());
+  }
+}
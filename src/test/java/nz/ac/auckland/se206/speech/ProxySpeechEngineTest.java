@@ -0,0 +1,39 @@
+package nz.ac.auckland.se206.speech;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest.Provider;
+import nz.ac.auckland.apiproxy.tts.TextToSpeechRequest.Voice;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ProxySpeechEngineTest {
+
+  @TempDir Path cacheDir;
+
+  @Test
+  public void testPassageIsCachedOnlyWhenEverySentenceIs() {
+    String passage =
+        "The security footage shows the door opening at midnight. "
+            + "Nobody was logged into the terminal at the time.";
+    List<String> sentences = SentenceSplitter.split(passage);
+    assertEquals(2, sentences.size());
+
+    ProxySpeechEngine engine = new ProxySpeechEngine(Provider.OPENAI, Voice.OPENAI_NOVA);
+    AudioCache cache = new AudioCache(cacheDir, 1024);
+
+    // A clip for the whole passage is never played, so it doesn't count
+    cache.put(AudioCache.keyOf(passage, Provider.OPENAI, Voice.OPENAI_NOVA), new byte[4]);
+    assertFalse(engine.isCached(sentences, cache));
+
+    cache.put(AudioCache.keyOf(sentences.get(0), Provider.OPENAI, Voice.OPENAI_NOVA), new byte[4]);
+    assertFalse(engine.isCached(sentences, cache));
+
+    cache.put(AudioCache.keyOf(sentences.get(1), Provider.OPENAI, Voice.OPENAI_NOVA), new byte[4]);
+    assertTrue(engine.isCached(sentences, cache));
+  }
+}